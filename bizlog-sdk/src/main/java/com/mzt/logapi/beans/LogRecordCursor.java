@@ -0,0 +1,74 @@
+package com.mzt.logapi.beans;
+
+import lombok.*;
+
+import java.io.Serializable;
+import java.util.Comparator;
+import java.util.Date;
+
+/**
+ * 操作日志分页查询的游标，日志按 (createTime, id) 倒序排列，下一页从游标之后开始
+ */
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class LogRecordCursor implements Serializable {
+
+    /**
+     * 和游标一致的排序：创建时间倒序，创建时间相同的按 id 倒序，没有创建时间的排在最后
+     */
+    public static final Comparator<LogRecord> DESCENDING = LogRecordCursor::compareDescending;
+    /**
+     * 上一页最后一条日志的创建时间
+     */
+    private final Date createTime;
+    /**
+     * 上一页最后一条日志的 id，创建时间相同的日志按 id 倒序
+     */
+    private final Serializable id;
+
+    /**
+     * @param lastLogRecord 上一页的最后一条日志
+     * @return 下一页的游标
+     */
+    public static LogRecordCursor of(LogRecord lastLogRecord) {
+        return new LogRecordCursor(lastLogRecord.getCreateTime(), lastLogRecord.getId());
+    }
+
+    /**
+     * 日志在倒序排列中是否排在游标之后
+     */
+    public boolean isBefore(LogRecord logRecord) {
+        if (logRecord.getCreateTime() == null || createTime == null) {
+            return false;
+        }
+        int compare = logRecord.getCreateTime().compareTo(createTime);
+        if (compare != 0 || id == null || logRecord.getId() == null) {
+            return compare < 0;
+        }
+        return compareId(logRecord.getId(), id) < 0;
+    }
+
+    private static int compareDescending(LogRecord a, LogRecord b) {
+        if (a.getCreateTime() == null || b.getCreateTime() == null) {
+            return a.getCreateTime() == null ? (b.getCreateTime() == null ? 0 : 1) : -1;
+        }
+        int compare = b.getCreateTime().compareTo(a.getCreateTime());
+        if (compare != 0 || a.getId() == null || b.getId() == null) {
+            return compare;
+        }
+        return compareId(b.getId(), a.getId());
+    }
+
+    /**
+     * 类型不同或者不能比较的 id 认为相等
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareId(Serializable a, Serializable b) {
+        if (a instanceof Comparable && a.getClass().isInstance(b)) {
+            return ((Comparable) a).compareTo(b);
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,195 @@
+package com.mzt.logapi.beans;
+
+import lombok.*;
+import org.springframework.beans.BeanUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StopWatch;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.text.NumberFormat;
+
+/**
+ * 一次被 @LogRecord 拦截的方法调用的耗时，交给 ILogRecordPerformanceMonitor 记录
+ */
+@Getter
+@Builder
+@AllArgsConstructor
+@ToString
+public class LogRecordPerformance {
+    /**
+     * 被拦截的方法
+     */
+    private final Method method;
+    /**
+     * 被拦截的对象的类型
+     */
+    private final Class<?> targetClass;
+    /**
+     * 方法执行前解析前置函数的耗时
+     */
+    private final long beforeExecuteNanos;
+    /**
+     * 方法执行后解析模板的耗时，不包括保存日志
+     */
+    private final long afterExecuteNanos;
+    /**
+     * 保存日志（或者放入异步队列）的耗时
+     */
+    private final long persistNanos;
+    /**
+     * 业务方法是否执行成功
+     */
+    private final boolean success;
+    /**
+     * 方法上所有 @LogRecord 注解的模板个数
+     */
+    private final int templateCount;
+
+    /**
+     * 转成和之前拦截器里一样的 StopWatch，任务依次是 before-execute、after-execute、persist
+     */
+    public StopWatch toStopWatch(String id) {
+        return new FixedStopWatch(id, new String[]{"before-execute", "after-execute", "persist"},
+                new long[]{beforeExecuteNanos, afterExecuteNanos, persistNanos});
+    }
+
+    /**
+     * 耗时已经测量好的 StopWatch，不能再 start、stop。
+     * Spring 的 TaskInfo 的构造方法不是 public 的，通过反射创建，getTaskInfo 和之前的 StopWatch 一样返回每个任务
+     */
+    private static final class FixedStopWatch extends StopWatch {
+        private static final Constructor<StopWatch.TaskInfo> TASK_INFO_CONSTRUCTOR = taskInfoConstructor();
+
+        private final String[] taskNames;
+        private final long[] taskNanos;
+        private final long totalNanos;
+        private final StopWatch.TaskInfo[] taskInfos;
+
+        private FixedStopWatch(String id, String[] taskNames, long[] taskNanos) {
+            super(id);
+            this.taskNames = taskNames;
+            this.taskNanos = taskNanos;
+            long total = 0;
+            this.taskInfos = new StopWatch.TaskInfo[taskNames.length];
+            for (int i = 0; i < taskNames.length; i++) {
+                total += taskNanos[i];
+                taskInfos[i] = BeanUtils.instantiateClass(TASK_INFO_CONSTRUCTOR, taskNames[i], taskNanos[i]);
+            }
+            this.totalNanos = total;
+        }
+
+        private static Constructor<StopWatch.TaskInfo> taskInfoConstructor() {
+            try {
+                return ReflectionUtils.accessibleConstructor(StopWatch.TaskInfo.class, String.class, long.class);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException("StopWatch.TaskInfo(String, long) not found", e);
+            }
+        }
+
+        @Override
+        public void start(String taskName) {
+            throw new IllegalStateException("LogRecord performance StopWatch is already stopped");
+        }
+
+        @Override
+        public void stop() {
+            throw new IllegalStateException("LogRecord performance StopWatch is already stopped");
+        }
+
+        @Override
+        public boolean isRunning() {
+            return false;
+        }
+
+        @Override
+        public String currentTaskName() {
+            return null;
+        }
+
+        @Override
+        public long getLastTaskTimeNanos() {
+            return taskNanos[taskNanos.length - 1];
+        }
+
+        @Override
+        public long getLastTaskTimeMillis() {
+            return getLastTaskTimeNanos() / 1_000_000;
+        }
+
+        @Override
+        public String getLastTaskName() {
+            return taskNames[taskNames.length - 1];
+        }
+
+        @Override
+        public StopWatch.TaskInfo getLastTaskInfo() {
+            return taskInfos[taskInfos.length - 1];
+        }
+
+        @Override
+        public long getTotalTimeNanos() {
+            return totalNanos;
+        }
+
+        @Override
+        public long getTotalTimeMillis() {
+            return totalNanos / 1_000_000;
+        }
+
+        @Override
+        public double getTotalTimeSeconds() {
+            return totalNanos / 1_000_000_000.0;
+        }
+
+        @Override
+        public int getTaskCount() {
+            return taskNames.length;
+        }
+
+        @Override
+        public StopWatch.TaskInfo[] getTaskInfo() {
+            return taskInfos.clone();
+        }
+
+        @Override
+        public String shortSummary() {
+            return "StopWatch '" + getId() + "': running time = " + totalNanos + " ns";
+        }
+
+        /**
+         * 和 Spring StopWatch#prettyPrint 的格式一样
+         */
+        @Override
+        public String prettyPrint() {
+            StringBuilder sb = new StringBuilder(shortSummary());
+            sb.append('\n');
+            sb.append("---------------------------------------------\n");
+            sb.append("ns         %     Task name\n");
+            sb.append("---------------------------------------------\n");
+            NumberFormat nf = NumberFormat.getNumberInstance();
+            nf.setMinimumIntegerDigits(9);
+            nf.setGroupingUsed(false);
+            NumberFormat pf = NumberFormat.getPercentInstance();
+            pf.setMinimumIntegerDigits(3);
+            pf.setGroupingUsed(false);
+            for (int i = 0; i < taskNames.length; i++) {
+                sb.append(nf.format(taskNanos[i])).append("  ");
+                sb.append(pf.format(totalNanos == 0 ? 0 : (double) taskNanos[i] / totalNanos)).append("  ");
+                sb.append(taskNames[i]).append("\n");
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(shortSummary());
+            for (int i = 0; i < taskNames.length; i++) {
+                sb.append("; [").append(taskNames[i]).append("] took ").append(taskNanos[i]).append(" ns");
+                long percent = totalNanos == 0 ? 0 : Math.round(100.0 * taskNanos[i] / totalNanos);
+                sb.append(" = ").append(percent).append("%");
+            }
+            return sb.toString();
+        }
+    }
+}
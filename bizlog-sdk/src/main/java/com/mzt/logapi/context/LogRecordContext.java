@@ -1,8 +1,9 @@
 package com.mzt.logapi.context;
 
-import com.google.common.collect.Maps;
-
-import java.util.*;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * @author muzhantong
@@ -10,34 +11,55 @@ import java.util.*;
  */
 public class LogRecordContext {
 
-    private static final InheritableThreadLocal<Deque<Map<String, Object>>> variableMapStack = new InheritableThreadLocal<>();
-
-    public static void putVariable(String name, Object value) {
-        if (variableMapStack.get() == null) {
-            Deque<Map<String, Object>> stack = new ArrayDeque<>();
-            variableMapStack.set(stack);
+    private static final ThreadLocal<SpanStack> inheritableVariableMapStack = new InheritableThreadLocal<SpanStack>() {
+        @Override
+        protected SpanStack initialValue() {
+            return new SpanStack();
         }
-        Deque<Map<String, Object>> mapStack = variableMapStack.get();
-        if (mapStack.size() == 0) {
-            variableMapStack.get().push(Maps.newHashMap());
+
+        @Override
+        protected SpanStack childValue(SpanStack parentValue) {
+            return parentValue.copyTop();
         }
-        variableMapStack.get().element().put(name, value);
+    };
+
+    private static final ThreadLocal<SpanStack> plainVariableMapStack = ThreadLocal.withInitial(SpanStack::new);
+
+    private static volatile ThreadLocal<SpanStack> variableMapStack = inheritableVariableMapStack;
+
+    /**
+     * 新建的线程是否复制父线程当前 span 里的变量，默认复制。线程池和大量创建线程的场景建议关闭，
+     * 关闭后异步代码使用 {@link #snapshot()} 或者 {@link LogRecordContextExecutors} 显式传递变量。
+     * 这个设置对整个进程生效；只在应用启动的时候设置，切换之前放入的变量不再可见
+     */
+    public static void setInheritable(boolean inheritable) {
+        variableMapStack = inheritable ? inheritableVariableMapStack : plainVariableMapStack;
+    }
+
+    /**
+     * @return 当前 span 里的变量的快照，在其他线程中 {@link Snapshot#attach()} 后可以读取这些变量
+     */
+    public static Snapshot snapshot() {
+        Map<String, Object> top = variableMapStack.get().top();
+        return top == null || top.isEmpty() ? Snapshot.EMPTY : new Snapshot(new HashMap<>(top));
+    }
+
+    public static void putVariable(String name, Object value) {
+        variableMapStack.get().topForWrite().put(name, value);
     }
 
     public static Object getVariable(String key) {
-        Map<String, Object> variableMap = variableMapStack.get().peek();
+        Map<String, Object> variableMap = variableMapStack.get().top();
         return variableMap == null ? null : variableMap.get(key);
     }
 
     public static Map<String, Object> getVariables() {
-        Deque<Map<String, Object>> mapStack = variableMapStack.get();
-        return mapStack.peek();
+        SpanStack stack = variableMapStack.get();
+        return stack.isEmpty() ? null : stack.topForWrite();
     }
 
     public static void clear() {
-        if (variableMapStack.get() != null) {
-            variableMapStack.get().pop();
-        }
+        variableMapStack.get().pop();
     }
 
     /**
@@ -45,12 +67,121 @@ public class LogRecordContext {
      * 每进入一个方法初始化一个 span 放入到 stack中，方法执行完后 pop 掉这个span
      */
     public static void putEmptySpan() {
-        Deque<Map<String, Object>> mapStack = variableMapStack.get();
-        if (mapStack == null) {
-            Deque<Map<String, Object>> stack = new ArrayDeque<>();
-            variableMapStack.set(stack);
+        variableMapStack.get().push();
+    }
+
+    /**
+     * 某个时刻 span 里的变量，不会再改变
+     */
+    public static final class Snapshot {
+
+        private static final Snapshot EMPTY = new Snapshot(Collections.emptyMap());
+
+        private final Map<String, Object> variables;
+
+        private Snapshot(Map<String, Object> variables) {
+            this.variables = variables;
+        }
+
+        public Map<String, Object> getVariables() {
+            return Collections.unmodifiableMap(variables);
+        }
+
+        /**
+         * 在当前线程放入一个包含快照变量的 span，span 里新放入的变量不会影响快照所在的线程；
+         * 使用完调用 {@link Scope#close()}，和 try-with-resources 一起使用
+         */
+        public Scope attach() {
+            SpanStack stack = variableMapStack.get();
+            int depth = stack.size;
+            stack.push();
+            if (!variables.isEmpty()) {
+                stack.spans[depth] = new HashMap<>(variables);
+            }
+            return new Scope(stack, depth);
+        }
+    }
+
+    /**
+     * {@link Snapshot#attach()} 放入的 span，关闭的时候移除这个 span 以及之后没有移除的 span
+     */
+    public static final class Scope implements AutoCloseable {
+
+        private final SpanStack stack;
+        private final int depth;
+
+        private Scope(SpanStack stack, int depth) {
+            this.stack = stack;
+            this.depth = depth;
+        }
+
+        @Override
+        public void close() {
+            while (stack.size > depth) {
+                stack.pop();
+            }
         }
-        variableMapStack.get().push(Maps.newHashMap());
+    }
+
+    /**
+     * 每个线程一个的 span 栈，数组复用，span 的 map 在第一次 putVariable 的时候才创建，
+     * 没有使用变量的方法进入和退出都不会分配对象
+     */
+    private static final class SpanStack {
 
+        private static final int INITIAL_CAPACITY = 8;
+
+        @SuppressWarnings("unchecked")
+        private Map<String, Object>[] spans = new Map[INITIAL_CAPACITY];
+        private int size;
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        private void push() {
+            if (size == spans.length) {
+                spans = Arrays.copyOf(spans, size << 1);
+            }
+            spans[size++] = null;
+        }
+
+        private void pop() {
+            if (size > 0) {
+                spans[--size] = null;
+            }
+        }
+
+        private Map<String, Object> top() {
+            return size == 0 ? null : spans[size - 1];
+        }
+
+        /**
+         * 没有 span 的时候和之前一样放入一个 span
+         */
+        private Map<String, Object> topForWrite() {
+            if (size == 0) {
+                push();
+            }
+            Map<String, Object> span = spans[size - 1];
+            if (span == null) {
+                span = new HashMap<>(8);
+                spans[size - 1] = span;
+            }
+            return span;
+        }
+
+        /**
+         * 子线程复制父线程当前 span 里的变量，不和父线程共用栈
+         */
+        private SpanStack copyTop() {
+            SpanStack child = new SpanStack();
+            Map<String, Object> top = top();
+            if (top != null) {
+                child.push();
+                child.spans[0] = new HashMap<>(top);
+            }
+            return child;
+        }
     }
 }
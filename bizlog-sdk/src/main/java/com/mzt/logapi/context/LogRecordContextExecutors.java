@@ -0,0 +1,71 @@
+package com.mzt.logapi.context;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 把提交任务时 LogRecordContext 里的变量传递到执行任务的线程，任务执行完后恢复执行线程原来的 span，
+ * 线程池复用线程的时候不会残留上一个任务的变量
+ */
+public final class LogRecordContextExecutors {
+
+    private LogRecordContextExecutors() {
+    }
+
+    public static Runnable wrap(Runnable runnable) {
+        LogRecordContext.Snapshot snapshot = LogRecordContext.snapshot();
+        return () -> {
+            try (LogRecordContext.Scope ignored = snapshot.attach()) {
+                runnable.run();
+            }
+        };
+    }
+
+    public static <T> Callable<T> wrapCallable(Callable<T> callable) {
+        LogRecordContext.Snapshot snapshot = LogRecordContext.snapshot();
+        return () -> {
+            try (LogRecordContext.Scope ignored = snapshot.attach()) {
+                return callable.call();
+            }
+        };
+    }
+
+    public static <T> Supplier<T> wrapSupplier(Supplier<T> supplier) {
+        LogRecordContext.Snapshot snapshot = LogRecordContext.snapshot();
+        return () -> {
+            try (LogRecordContext.Scope ignored = snapshot.attach()) {
+                return supplier.get();
+            }
+        };
+    }
+
+    /**
+     * CompletableFuture 的 thenApplyAsync 等回调在前一个阶段完成的线程中提交，需要在创建回调的时候包装
+     */
+    public static <T, R> Function<T, R> wrapFunction(Function<T, R> function) {
+        LogRecordContext.Snapshot snapshot = LogRecordContext.snapshot();
+        return value -> {
+            try (LogRecordContext.Scope ignored = snapshot.attach()) {
+                return function.apply(value);
+            }
+        };
+    }
+
+    /**
+     * 每个任务在 execute 的时候记录提交线程的变量
+     */
+    public static Executor wrapExecutor(Executor executor) {
+        return command -> executor.execute(wrap(command));
+    }
+
+    public static CompletableFuture<Void> runAsync(Runnable runnable, Executor executor) {
+        return CompletableFuture.runAsync(wrap(runnable), executor);
+    }
+
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+        return CompletableFuture.supplyAsync(wrapSupplier(supplier), executor);
+    }
+}
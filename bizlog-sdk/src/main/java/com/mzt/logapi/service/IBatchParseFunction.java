@@ -0,0 +1,23 @@
+package com.mzt.logapi.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 可以批量调用的函数：_DIFF 的集合字段、同一个日志模板里多次引用的函数会把所有参数一次传进来，
+ * 适合根据 id 批量查询名称这类函数，避免每个参数调用一次
+ */
+public interface IBatchParseFunction extends IParseFunction {
+
+    /**
+     * @param values 函数入参，已经去重
+     * @return 入参和文案，没有返回的入参文案为 null
+     */
+    Map<Object, String> applyBatch(Collection<Object> values);
+
+    @Override
+    default String apply(Object value) {
+        return applyBatch(Collections.singletonList(value)).get(value);
+    }
+}
@@ -1,8 +1,35 @@
 package com.mzt.logapi.service;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 public interface IFunctionService {
 
     String apply(String functionName, Object value);
 
     boolean beforeFunction(String functionName);
+
+    /**
+     * @return 函数是否支持批量调用
+     * @see IBatchParseFunction
+     */
+    default boolean batchFunction(String functionName) {
+        return false;
+    }
+
+    /**
+     * 一次解析多个参数，默认逐个调用 {@link #apply(String, Object)}
+     *
+     * @return 入参和文案
+     */
+    default Map<Object, String> batchApply(String functionName, Collection<?> values) {
+        Map<Object, String> results = new HashMap<>();
+        for (Object value : values) {
+            if (!results.containsKey(value)) {
+                results.put(value, apply(functionName, value));
+            }
+        }
+        return results;
+    }
 }
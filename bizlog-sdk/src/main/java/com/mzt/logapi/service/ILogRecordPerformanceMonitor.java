@@ -1,12 +1,38 @@
 package com.mzt.logapi.service;
 
+import com.mzt.logapi.beans.LogRecordPerformance;
 import org.springframework.util.StopWatch;
 
 public interface ILogRecordPerformanceMonitor {
 
-     void print(StopWatch stopWatch);
+     /**
+      * 没有实现 {@link #record(LogRecordPerformance)} 的时候，record 把各阶段的耗时转成 StopWatch 后调用这个方法，
+      * StopWatch 的 getTaskInfo、prettyPrint、shortSummary、总耗时和最后一个任务的耗时都可以使用
+      *
+      * @deprecated 请实现 {@link #record(LogRecordPerformance)}
+      */
+     @Deprecated
+     default void print(StopWatch stopWatch) {
+     }
+
+     /**
+      * 是否需要记录耗时，返回 false 的时候拦截器不会计时，也不会调用 record
+      */
+     default boolean enabled() {
+          return true;
+     }
+
+     /**
+      * 记录一次方法调用各个阶段的耗时，默认转成 StopWatch 交给 {@link #print(StopWatch)}，兼容之前只实现了 print 的监控
+      *
+      * @param performance 方法、各阶段耗时、是否成功、模板个数
+      */
+     default void record(LogRecordPerformance performance) {
+          print(performance.toStopWatch(MONITOR_NAME));
+     }
 
      String MONITOR_NAME = "log-record-performance";
      String MONITOR_TASK_BEFORE_EXECUTE = "before-execute";
      String MONITOR_TASK_AFTER_EXECUTE = "after-execute";
+     String MONITOR_TASK_PERSIST = "persist";
 }
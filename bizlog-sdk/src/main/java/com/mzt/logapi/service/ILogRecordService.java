@@ -2,8 +2,10 @@ package com.mzt.logapi.service;
 
 
 import com.mzt.logapi.beans.LogRecord;
+import com.mzt.logapi.beans.LogRecordCursor;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 public interface ILogRecordService {
     /**
@@ -13,6 +15,17 @@ public interface ILogRecordService {
      */
     void record(LogRecord logRecord);
 
+    /**
+     * 批量保存log，开启异步写入后由后台线程攒批调用，默认逐条调用 {@link #record(LogRecord)}
+     *
+     * @param logRecords 日志实体列表
+     */
+    default void recordBatch(List<LogRecord> logRecords) {
+        for (LogRecord logRecord : logRecords) {
+            record(logRecord);
+        }
+    }
+
     /**
      * 返回最多100条记录
      *
@@ -31,4 +44,26 @@ public interface ILogRecordService {
      * @return 操作日志列表
      */
     List<LogRecord> queryLogByBizNo(String bizNo, String type, String subType);
+
+    /**
+     * 按 (createTime, id) 游标分页查询，日志按创建时间倒序、创建时间相同的按 id 倒序返回。
+     * 默认在 {@link #queryLog(String, String)}、{@link #queryLogByBizNo(String, String, String)} 的结果中分页，
+     * 这两个方法最多返回 100 条，所以默认实现只能翻到这 100 条以内，之后的页返回空列表；
+     * 存储支持的话应该覆盖这个方法，直接按游标查询
+     *
+     * @param bizNo    操作日志的业务标识，比如：订单号
+     * @param type     操作日志类型
+     * @param subType  操作日志子类型，为 null 的时候不按子类型过滤
+     * @param cursor   上一页最后一条日志的游标 {@link LogRecordCursor#of(LogRecord)}，查询第一页的时候为 null
+     * @param pageSize 每页的条数
+     * @return 操作日志列表，少于 pageSize 条说明没有下一页了
+     */
+    default List<LogRecord> queryLogByCursor(String bizNo, String type, String subType, LogRecordCursor cursor, int pageSize) {
+        List<LogRecord> logRecords = subType == null ? queryLog(bizNo, type) : queryLogByBizNo(bizNo, type, subType);
+        return logRecords.stream()
+                .filter(logRecord -> cursor == null || cursor.isBefore(logRecord))
+                .sorted(LogRecordCursor.DESCENDING)
+                .limit(pageSize)
+                .collect(Collectors.toList());
+    }
 }
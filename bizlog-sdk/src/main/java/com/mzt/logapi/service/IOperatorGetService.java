@@ -15,4 +15,12 @@ public interface IOperatorGetService {
      * @return 转换成Operator返回
      */
     Operator getUser();
+
+    /**
+     * 开启 mzt.log.record.operator-cache.enabled 之后，getUser 的结果按这个 key 缓存，比如当前请求的 token；
+     * 返回 null 的时候不使用缓存
+     */
+    default Object cacheKey() {
+        return null;
+    }
 }
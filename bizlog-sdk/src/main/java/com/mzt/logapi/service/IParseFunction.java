@@ -1,11 +1,44 @@
 package com.mzt.logapi.service;
 
+import java.time.Duration;
+
 public interface IParseFunction {
 
     default boolean executeBefore() {
         return false;
     }
 
+    /**
+     * 是否缓存函数的结果，相同参数的调用在 {@link #cacheTtl()} 内直接使用缓存的结果，适合根据 id 查询名称这类函数
+     *
+     * @since 3.0.0
+     */
+    default boolean cacheable() {
+        return false;
+    }
+
+    /**
+     * 缓存的结果写入后的有效时间
+     */
+    default Duration cacheTtl() {
+        return Duration.ofMinutes(1);
+    }
+
+    /**
+     * 缓存的最大条数，超过后淘汰最近最少使用的结果
+     */
+    default long cacheMaximumSize() {
+        return 1000;
+    }
+
+    /**
+     * 缓存的 key，默认是函数入参，入参需要正确实现 equals 和 hashCode；
+     * 函数结果还依赖其他上下文（比如当前登录的租户）的时候需要把上下文加到 key 里
+     */
+    default Object cacheKey(Object value) {
+        return value;
+    }
+
     String functionName();
 
     /**
@@ -0,0 +1,53 @@
+package com.mzt.logapi.service.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mzt.logapi.beans.Operator;
+import com.mzt.logapi.service.IOperatorGetService;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按 {@link IOperatorGetService#cacheKey()} 缓存 getUser 的结果，适合 getUser 需要解析 token 或者调用用户服务的场景；
+ * cacheKey 为 null 或者 getUser 返回 null 的时候不缓存
+ */
+public class CachingOperatorGetService implements IOperatorGetService {
+
+    private final IOperatorGetService delegate;
+    private final Cache<Object, Operator> cache;
+
+    public CachingOperatorGetService(IOperatorGetService delegate, Duration ttl, long maximumSize) {
+        this.delegate = delegate;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl.toMillis(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public Operator getUser() {
+        Object key = delegate.cacheKey();
+        if (key == null) {
+            return delegate.getUser();
+        }
+        Operator operator = cache.getIfPresent(key);
+        if (operator == null) {
+            operator = delegate.getUser();
+            if (operator != null) {
+                cache.put(key, operator);
+            }
+        }
+        return operator;
+    }
+
+    @Override
+    public Object cacheKey() {
+        return delegate.cacheKey();
+    }
+
+    public Cache<Object, Operator> getCache() {
+        return cache;
+    }
+}
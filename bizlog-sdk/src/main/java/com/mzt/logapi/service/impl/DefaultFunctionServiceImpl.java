@@ -1,8 +1,21 @@
 package com.mzt.logapi.service.impl;
 
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.mzt.logapi.service.IBatchParseFunction;
 import com.mzt.logapi.service.IFunctionService;
 import com.mzt.logapi.service.IParseFunction;
+import lombok.EqualsAndHashCode;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author muzhantong
@@ -12,8 +25,26 @@ public class DefaultFunctionServiceImpl implements IFunctionService {
 
     private final ParseFunctionFactory parseFunctionFactory;
 
+    /**
+     * cacheable 的函数的结果缓存，key 是函数名，启动的时候创建好，之后只读
+     */
+    private final Map<String, Cache<FunctionCacheKey, String>> functionCaches;
+
+    private String tenant = "";
+
     public DefaultFunctionServiceImpl(ParseFunctionFactory parseFunctionFactory) {
         this.parseFunctionFactory = parseFunctionFactory;
+        Map<String, Cache<FunctionCacheKey, String>> caches = new HashMap<>();
+        for (IParseFunction function : parseFunctionFactory.getFunctions()) {
+            if (function.cacheable()) {
+                caches.put(function.functionName(), CacheBuilder.newBuilder()
+                        .maximumSize(function.cacheMaximumSize())
+                        .expireAfterWrite(function.cacheTtl().toMillis(), TimeUnit.MILLISECONDS)
+                        .recordStats()
+                        .build());
+            }
+        }
+        this.functionCaches = Collections.unmodifiableMap(caches);
     }
 
     @Override
@@ -22,11 +53,98 @@ public class DefaultFunctionServiceImpl implements IFunctionService {
         if (function == null) {
             return value.toString();
         }
-        return function.apply(value);
+        Cache<FunctionCacheKey, String> cache = functionCaches.get(functionName);
+        if (cache == null) {
+            return function.apply(value);
+        }
+        FunctionCacheKey cacheKey = new FunctionCacheKey(tenant, function.cacheKey(value));
+        String result = cache.getIfPresent(cacheKey);
+        if (result == null) {
+            result = function.apply(value);
+            //null 不缓存
+            if (result != null) {
+                cache.put(cacheKey, result);
+            }
+        }
+        return result;
     }
 
     @Override
     public boolean beforeFunction(String functionName) {
         return parseFunctionFactory.isBeforeFunction(functionName);
     }
+
+    @Override
+    public boolean batchFunction(String functionName) {
+        return parseFunctionFactory.getFunction(functionName) instanceof IBatchParseFunction;
+    }
+
+    /**
+     * IBatchParseFunction 的缓存没有命中的参数一次调用 applyBatch，其他函数逐个调用
+     */
+    @Override
+    public Map<Object, String> batchApply(String functionName, Collection<?> values) {
+        IParseFunction function = parseFunctionFactory.getFunction(functionName);
+        if (!(function instanceof IBatchParseFunction)) {
+            return IFunctionService.super.batchApply(functionName, values);
+        }
+        Map<Object, String> results = new HashMap<>();
+        Cache<FunctionCacheKey, String> cache = functionCaches.get(functionName);
+        List<Object> misses = new ArrayList<>();
+        for (Object value : values) {
+            if (results.containsKey(value)) {
+                continue;
+            }
+            String result = cache == null ? null : cache.getIfPresent(new FunctionCacheKey(tenant, function.cacheKey(value)));
+            results.put(value, result);
+            if (result == null) {
+                misses.add(value);
+            }
+        }
+        if (!misses.isEmpty()) {
+            Map<Object, String> loaded = ((IBatchParseFunction) function).applyBatch(misses);
+            for (Object value : misses) {
+                String result = loaded.get(value);
+                results.put(value, result);
+                if (cache != null && result != null) {
+                    cache.put(new FunctionCacheKey(tenant, function.cacheKey(value)), result);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return 函数名和函数结果缓存，可以用来绑定监控
+     */
+    public Map<String, Cache<?, String>> getFunctionCaches() {
+        return Collections.unmodifiableMap(functionCaches);
+    }
+
+    /**
+     * @return 函数结果缓存的命中、未命中、淘汰等统计，key 是函数名
+     */
+    public Map<String, CacheStats> getCacheStats() {
+        Map<String, CacheStats> stats = new HashMap<>();
+        functionCaches.forEach((functionName, cache) -> stats.put(functionName, cache.stats()));
+        return stats;
+    }
+
+    /**
+     * 缓存 key 里的租户，多个租户共用一个应用的时候不同租户的结果分开缓存
+     */
+    public void setTenant(String tenant) {
+        this.tenant = tenant == null ? "" : tenant;
+    }
+
+    @EqualsAndHashCode
+    private static final class FunctionCacheKey {
+        private final String tenant;
+        private final Object key;
+
+        private FunctionCacheKey(String tenant, Object key) {
+            this.tenant = tenant;
+            this.key = key;
+        }
+    }
 }
@@ -1,8 +1,8 @@
 package com.mzt.logapi.service.impl;
 
+import com.mzt.logapi.beans.LogRecordPerformance;
 import com.mzt.logapi.service.ILogRecordPerformanceMonitor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.util.StopWatch;
 
 /**
  * @author muzhantong
@@ -12,7 +12,17 @@ import org.springframework.util.StopWatch;
 public class DefaultLogRecordPerformanceMonitor implements ILogRecordPerformanceMonitor {
 
     @Override
-    public void print(StopWatch stopWatch) {
-        log.debug("LogRecord performance={}", stopWatch.prettyPrint());
+    public boolean enabled() {
+        return log.isDebugEnabled();
+    }
+
+    @Override
+    public void record(LogRecordPerformance performance) {
+        log.debug("LogRecord performance, method={}.{}, {}={}ns, {}={}ns, {}={}ns, success={}, templateCount={}",
+                performance.getTargetClass().getName(), performance.getMethod().getName(),
+                MONITOR_TASK_BEFORE_EXECUTE, performance.getBeforeExecuteNanos(),
+                MONITOR_TASK_AFTER_EXECUTE, performance.getAfterExecuteNanos(),
+                MONITOR_TASK_PERSIST, performance.getPersistNanos(),
+                performance.isSuccess(), performance.getTemplateCount());
     }
 }
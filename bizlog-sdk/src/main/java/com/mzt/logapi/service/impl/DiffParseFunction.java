@@ -1,7 +1,11 @@
 package com.mzt.logapi.service.impl;
 
 import com.mzt.logapi.context.LogRecordContext;
+import com.mzt.logapi.starter.diff.DiffLogFieldDiffer;
+import com.mzt.logapi.starter.diff.DiffLogFieldInclusionResolver;
+import com.mzt.logapi.starter.diff.DiffMode;
 import com.mzt.logapi.starter.diff.IDiffItemsToLogContentService;
+import de.danielbechler.diff.ObjectDiffer;
 import de.danielbechler.diff.ObjectDifferBuilder;
 import de.danielbechler.diff.node.DiffNode;
 import lombok.extern.slf4j.Slf4j;
@@ -20,6 +24,20 @@ public class DiffParseFunction {
 
     private static IDiffItemsToLogContentService diffItemsToLogContentService;
 
+    /**
+     * ObjectDiffer 构建一次之后可以并发使用，和比较的类型无关，所有类型共用一个
+     */
+    private volatile ObjectDiffer objectDiffer;
+
+    /**
+     * 只比较有 @DiffLogField 注解的字段（以及包含这种字段的对象），默认比较所有字段
+     */
+    private boolean diffLogFieldOnly = false;
+
+    private DiffMode diffMode = DiffMode.OBJECT_DIFF;
+
+    private DiffLogFieldDiffer diffLogFieldDiffer;
+
     //@Override
     public String functionName() {
         return diffFunctionName;
@@ -43,7 +61,13 @@ public class DiffParseFunction {
             log.error("diff的两个对象类型不同, source.class={}, target.class={}", source.getClass().toString(), target.getClass().toString());
             return "";
         }
-        DiffNode diffNode = ObjectDifferBuilder.buildDefault().compare(target, source);
+        if (diffMode == DiffMode.FIELD) {
+            if (diffLogFieldDiffer == null) {
+                throw new IllegalStateException("diffMode is FIELD but no DiffLogFieldDiffer is set");
+            }
+            return diffLogFieldDiffer.diff(source, target);
+        }
+        DiffNode diffNode = getObjectDiffer().compare(target, source);
         return diffItemsToLogContentService.toLogContent(diffNode, source, target);
     }
 
@@ -52,6 +76,41 @@ public class DiffParseFunction {
         return diff(oldObj, newObj);
     }
 
+    private ObjectDiffer getObjectDiffer() {
+        ObjectDiffer differ = objectDiffer;
+        if (differ == null) {
+            differ = buildObjectDiffer();
+            objectDiffer = differ;
+        }
+        return differ;
+    }
+
+    /**
+     * 构建所有类型共用的 ObjectDiffer，子类可以覆盖这个方法定制比较规则
+     *
+     * @return ObjectDiffer
+     */
+    protected ObjectDiffer buildObjectDiffer() {
+        ObjectDifferBuilder builder = ObjectDifferBuilder.startBuilding();
+        if (diffLogFieldOnly) {
+            builder.inclusion().resolveUsing(new DiffLogFieldInclusionResolver());
+        }
+        return builder.build();
+    }
+
+    public void setDiffLogFieldOnly(boolean diffLogFieldOnly) {
+        this.diffLogFieldOnly = diffLogFieldOnly;
+        this.objectDiffer = null;
+    }
+
+    public void setDiffMode(DiffMode diffMode) {
+        this.diffMode = diffMode;
+    }
+
+    public void setDiffLogFieldDiffer(DiffLogFieldDiffer diffLogFieldDiffer) {
+        this.diffLogFieldDiffer = diffLogFieldDiffer;
+    }
+
     public void setDiffItemsToLogContentService(IDiffItemsToLogContentService diffItemsToLogContentService) {
         DiffParseFunction.diffItemsToLogContentService = diffItemsToLogContentService;
     }
@@ -0,0 +1,35 @@
+package com.mzt.logapi.service.impl;
+
+import com.mzt.logapi.service.IFunctionService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+
+/**
+ * 把函数结果缓存的命中率等统计注册到 Micrometer，指标名是 log.record.function.cache，tag function 是函数名；
+ * 自定义了 IFunctionService 的时候不注册
+ */
+public class FunctionCacheMetricsBinder implements SmartInitializingSingleton {
+
+    private static final String CACHE_NAME = "log.record.function.cache";
+
+    private final ObjectProvider<IFunctionService> functionServiceProvider;
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    public FunctionCacheMetricsBinder(ObjectProvider<IFunctionService> functionServiceProvider, ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.functionServiceProvider = functionServiceProvider;
+        this.meterRegistryProvider = meterRegistryProvider;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        IFunctionService functionService = functionServiceProvider.getIfUnique();
+        MeterRegistry meterRegistry = meterRegistryProvider.getIfAvailable();
+        if (!(functionService instanceof DefaultFunctionServiceImpl) || meterRegistry == null) {
+            return;
+        }
+        ((DefaultFunctionServiceImpl) functionService).getFunctionCaches().forEach((functionName, cache) ->
+                GuavaCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME, "function", functionName));
+    }
+}
@@ -0,0 +1,108 @@
+package com.mzt.logapi.service.impl;
+
+import com.mzt.logapi.beans.LogRecordPerformance;
+import com.mzt.logapi.service.ILogRecordPerformanceMonitor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.core.MethodClassKey;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 Micrometer 的性能监控：每个方法每个阶段一个带直方图的 Timer，业务方法执行失败的次数记一个 Counter。
+ * MeterRegistry 在第一次用到的时候再获取，容器里没有 MeterRegistry 的时候退回 debug 日志
+ */
+public class MicrometerLogRecordPerformanceMonitor implements ILogRecordPerformanceMonitor, SmartInitializingSingleton {
+
+    public static final String TIMER_NAME = "log.record.execution";
+    public static final String ERROR_COUNTER_NAME = "log.record.method.errors";
+
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+    private final ILogRecordPerformanceMonitor fallbackMonitor = new DefaultLogRecordPerformanceMonitor();
+    private final Map<MethodClassKey, MethodMeters> methodMetersCache = new ConcurrentHashMap<>(64);
+    private volatile MeterRegistry meterRegistry;
+    private volatile boolean resolved;
+
+    public MicrometerLogRecordPerformanceMonitor(ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.meterRegistryProvider = meterRegistryProvider;
+    }
+
+    @Override
+    public boolean enabled() {
+        return getMeterRegistry() != null || fallbackMonitor.enabled();
+    }
+
+    @Override
+    public void record(LogRecordPerformance performance) {
+        MeterRegistry registry = getMeterRegistry();
+        if (registry == null) {
+            fallbackMonitor.record(performance);
+            return;
+        }
+        MethodMeters meters = methodMetersCache.computeIfAbsent(new MethodClassKey(performance.getMethod(), performance.getTargetClass()),
+                key -> new MethodMeters(registry, performance.getTargetClass(), performance.getMethod()));
+        meters.beforeExecute.record(performance.getBeforeExecuteNanos(), TimeUnit.NANOSECONDS);
+        meters.afterExecute.record(performance.getAfterExecuteNanos(), TimeUnit.NANOSECONDS);
+        meters.persist.record(performance.getPersistNanos(), TimeUnit.NANOSECONDS);
+        if (!performance.isSuccess()) {
+            meters.errors.increment();
+        }
+    }
+
+    /**
+     * 容器启动完成之前 MeterRegistry 可能还没有创建，只缓存取到的 MeterRegistry，没取到的时候下次再取
+     */
+    private MeterRegistry getMeterRegistry() {
+        MeterRegistry registry = meterRegistry;
+        if (registry == null && !resolved) {
+            registry = meterRegistryProvider.getIfAvailable();
+            meterRegistry = registry;
+        }
+        return registry;
+    }
+
+    /**
+     * 所有单例创建完之后还没有 MeterRegistry 的时候，之后不再查找
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (meterRegistry == null) {
+            meterRegistry = meterRegistryProvider.getIfAvailable();
+        }
+        resolved = true;
+    }
+
+    private static class MethodMeters {
+        private final Timer beforeExecute;
+        private final Timer afterExecute;
+        private final Timer persist;
+        private final Counter errors;
+
+        MethodMeters(MeterRegistry registry, Class<?> targetClass, Method method) {
+            Tags tags = Tags.of("class", targetClass.getName(), "method", method.getName());
+            this.beforeExecute = timer(registry, tags, MONITOR_TASK_BEFORE_EXECUTE);
+            this.afterExecute = timer(registry, tags, MONITOR_TASK_AFTER_EXECUTE);
+            this.persist = timer(registry, tags, MONITOR_TASK_PERSIST);
+            this.errors = Counter.builder(ERROR_COUNTER_NAME)
+                    .description("@LogRecord 方法执行失败的次数")
+                    .tags(tags)
+                    .register(registry);
+        }
+
+        private static Timer timer(MeterRegistry registry, Tags tags, String phase) {
+            return Timer.builder(TIMER_NAME)
+                    .description("@LogRecord 拦截各阶段的耗时")
+                    .tags(tags)
+                    .tag("phase", phase)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.mzt.logapi.service.impl;
+
+import com.mzt.logapi.service.IOperatorGetService;
+import com.mzt.logapi.starter.support.aop.LogRecordInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+
+/**
+ * 把操作人缓存的命中率等统计注册到 Micrometer，指标名是 log.record.operator.cache；没有开启操作人缓存的时候不注册
+ */
+public class OperatorCacheMetricsBinder implements SmartInitializingSingleton {
+
+    private static final String CACHE_NAME = "log.record.operator.cache";
+
+    private final ObjectProvider<LogRecordInterceptor> interceptorProvider;
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    public OperatorCacheMetricsBinder(ObjectProvider<LogRecordInterceptor> interceptorProvider, ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.interceptorProvider = interceptorProvider;
+        this.meterRegistryProvider = meterRegistryProvider;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        LogRecordInterceptor interceptor = interceptorProvider.getIfUnique();
+        MeterRegistry meterRegistry = meterRegistryProvider.getIfAvailable();
+        if (interceptor == null || meterRegistry == null) {
+            return;
+        }
+        IOperatorGetService operatorGetService = interceptor.getOperatorGetService();
+        if (operatorGetService instanceof CachingOperatorGetService) {
+            GuavaCacheMetrics.monitor(meterRegistry, ((CachingOperatorGetService) operatorGetService).getCache(), CACHE_NAME);
+        }
+    }
+}
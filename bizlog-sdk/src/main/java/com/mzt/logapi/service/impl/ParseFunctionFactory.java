@@ -4,6 +4,8 @@ import com.mzt.logapi.service.IParseFunction;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,6 +36,10 @@ public class ParseFunctionFactory {
         return allFunctionMap.get(functionName);
     }
 
+    public Collection<IParseFunction> getFunctions() {
+        return allFunctionMap == null ? Collections.emptyList() : Collections.unmodifiableCollection(allFunctionMap.values());
+    }
+
     public boolean isBeforeFunction(String functionName) {
         return allFunctionMap.get(functionName) != null && allFunctionMap.get(functionName).executeBefore();
     }
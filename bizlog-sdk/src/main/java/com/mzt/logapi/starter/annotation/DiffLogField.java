@@ -10,5 +10,11 @@ public @interface DiffLogField {
 
     String function() default "";
 
+    /**
+     * 集合类型的字段，元素的唯一标识属性名（比如 skuId），配置后按标识匹配修改前后的元素，
+     * 标识相同但内容不同的元素记为修改，而不是一条删除加一条添加
+     */
+    String identityKey() default "";
+
     //   String dateFormat() default "";
 }
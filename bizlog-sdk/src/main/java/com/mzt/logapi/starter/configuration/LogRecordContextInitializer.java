@@ -0,0 +1,23 @@
+package com.mzt.logapi.starter.configuration;
+
+import com.mzt.logapi.context.LogRecordContext;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * 按 mzt.log.record.context-inheritable 切换 LogRecordContext 使用的 ThreadLocal，在 LogRecordInterceptor 创建之前执行。
+ * LogRecordContext 的变量保存在静态的 ThreadLocal 中，这个设置对整个进程生效、不区分 Spring 容器：
+ * 同一个 JVM 中有多个容器的时候以最后初始化的容器的配置为准，切换之前放入的变量不再可见
+ */
+class LogRecordContextInitializer implements InitializingBean {
+
+    private final boolean inheritable;
+
+    LogRecordContextInitializer(boolean inheritable) {
+        this.inheritable = inheritable;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        LogRecordContext.setInheritable(inheritable);
+    }
+}
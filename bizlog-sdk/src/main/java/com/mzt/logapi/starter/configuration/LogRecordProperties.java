@@ -1,9 +1,16 @@
 package com.mzt.logapi.starter.configuration;
 
+import com.mzt.logapi.starter.diff.DiffMode;
+import com.mzt.logapi.starter.support.async.LogRecordRejectPolicy;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.expression.spel.SpelCompilerMode;
 import org.springframework.util.StringUtils;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author muzhantong
  * create on 2022/1/6 3:26 下午
@@ -32,6 +39,10 @@ public class LogRecordProperties {
      * 列表删除项的替换变量
      */
     private final String LIST_DEL_VALUE_PLACEHOLDER = "__delValues";
+    /**
+     * 列表修改项的替换变量
+     */
+    private final String LIST_MOD_VALUE_PLACEHOLDER = "__modValues";
 
     /**
      * 字段从空改为有值的时候的日志内容模板
@@ -49,6 +60,10 @@ public class LogRecordProperties {
      * 列表修改后既有有删除项又有添加项的时候的日志内容模板
      */
     private String updateTemplateForList = "【" + FIELD_PLACEHOLDER + "】添加了【" + LIST_ADD_VALUE_PLACEHOLDER + "】删除了【" + LIST_DEL_VALUE_PLACEHOLDER + "】";
+    /**
+     * 列表配置了 identityKey，有修改项的时候的日志内容模板
+     */
+    private String modifyTemplateForList = "【" + FIELD_PLACEHOLDER + "】修改了【" + LIST_MOD_VALUE_PLACEHOLDER + "】";
     /**
      * 字段更新后的日志内容模板
      */
@@ -65,10 +80,60 @@ public class LogRecordProperties {
      * 添加或者删除多个列表项的时候，list中多个项直接的分隔符
      */
     private String listItemSeparator = "，";
+    /**
+     * 列表修改项修改前和修改后的值之间的连接词
+     */
+    private String listItemModifyWord = "修改为";
     /**
      * 当对象存在嵌套对象的时候，比如order里面有个user，user分为创建人和更新人，那么：创建人『的』用户ID，其中『的』就是 ofWord
      */
     private String ofWord = "的";
+    /**
+     * _DIFF 的时候只比较有 @DiffLogField 注解的字段以及包含这种字段的对象，其他字段不参与比较；默认关闭，比较整个对象
+     */
+    private boolean diffLogFieldOnly = false;
+    /**
+     * _DIFF 的比较方式，默认 OBJECT_DIFF 使用 java-object-diff；FIELD 只比较 @DiffLogField 字段，
+     * 字段的日志内容由 IDiffItemsToLogContentService#getDiffLogContent 生成，自定义实现需要继承 DefaultDiffItemsToLogContentService
+     */
+    private DiffMode diffMode = DiffMode.OBJECT_DIFF;
+
+    /**
+     * 日志异步批量写入的配置，默认关闭，在业务线程中同步调用 ILogRecordService#record
+     */
+    private Async async = new Async();
+
+    /**
+     * 日志模板中 SpEL 表达式的编译模式，默认 OFF 解释执行；IMMEDIATE 第一次执行后就编译，MIXED 执行一段时间后再编译，
+     * 不能编译或者编译后执行失败的表达式自动退回解释执行
+     */
+    private SpelCompilerMode spelCompilerMode = SpelCompilerMode.OFF;
+
+    /**
+     * 新建的线程是否复制 LogRecordContext 当前的变量，关闭后使用普通 ThreadLocal，异步代码通过 LogRecordContextExecutors 传递变量。
+     * LogRecordContext 是静态的，这个配置对整个进程生效，同一个 JVM 中的多个 Spring 容器以最后初始化的为准
+     */
+    private boolean contextInheritable = true;
+
+    /**
+     * 方法执行前调用的自定义函数的配置
+     */
+    private BeforeFunction beforeFunction = new BeforeFunction();
+
+    /**
+     * 返回 CompletableFuture、Mono、Flux 的方法完成之后解析和保存日志的线程池配置
+     */
+    private Deferred deferred = new Deferred();
+
+    /**
+     * IOperatorGetService#getUser 结果的缓存配置
+     */
+    private OperatorCache operatorCache = new OperatorCache();
+
+    /**
+     * 按 type、subType 采样和限流的配置
+     */
+    private Sampling sampling = new Sampling();
 
 
     public void setAddTemplate(String template) {
@@ -123,4 +188,121 @@ public class LogRecordProperties {
         return "";
     }
 
+    public String formatList(String fieldName, String addContent, String delContent, String modContent) {
+        String content = formatList(fieldName, addContent, delContent);
+        if (StringUtils.isEmpty(modContent)) {
+            return content;
+        }
+        String modifyContent = modifyTemplateForList.replace(FIELD_PLACEHOLDER, fieldName).replace(LIST_MOD_VALUE_PLACEHOLDER, modContent);
+        return StringUtils.isEmpty(content) ? modifyContent : content + fieldSeparator + modifyContent;
+    }
+
+    @Data
+    public static class Async {
+        /**
+         * 是否开启异步写入，开启后日志先放入有界队列，由后台线程批量调用 ILogRecordService#recordBatch
+         */
+        private boolean enabled = false;
+        /**
+         * 队列容量
+         */
+        private int queueCapacity = 4096;
+        /**
+         * 每次批量写入的最大条数
+         */
+        private int batchSize = 100;
+        /**
+         * 后台写入线程数
+         */
+        private int workers = 1;
+        /**
+         * 队列满了之后的处理策略，默认在业务线程中同步写入
+         */
+        private LogRecordRejectPolicy rejectPolicy = LogRecordRejectPolicy.CALLER_RUNS;
+        /**
+         * 应用关闭时等待队列中日志写完的最长时间
+         */
+        private Duration shutdownTimeout = Duration.ofSeconds(10);
+    }
+
+    @Data
+    public static class BeforeFunction {
+        /**
+         * 是否并行调用一次方法调用中的多个执行前函数，默认在业务线程中依次调用
+         */
+        private boolean parallel = false;
+        /**
+         * 并行调用的线程数
+         */
+        private int threads = 8;
+        /**
+         * 线程池队列容量，满了之后提交不了的函数在方法执行后调用
+         */
+        private int queueCapacity = 1024;
+        /**
+         * 每个函数从提交开始等待返回的最长时间，超时的函数方法执行后已经返回的使用它的结果，还没有返回的取消并使用空值
+         */
+        private Duration timeout = Duration.ofSeconds(1);
+    }
+
+    @Data
+    public static class Deferred {
+        /**
+         * 线程数
+         */
+        private int threads = 2;
+        /**
+         * 队列容量，满了之后丢弃日志并打印错误日志，不会在完成返回值的线程里解析
+         */
+        private int queueCapacity = 4096;
+    }
+
+    @Data
+    public static class OperatorCache {
+        /**
+         * 是否按 IOperatorGetService#cacheKey 缓存操作人，默认关闭
+         */
+        private boolean enabled = false;
+        /**
+         * 缓存的有效时间
+         */
+        private Duration ttl = Duration.ofSeconds(30);
+        /**
+         * 最多缓存的操作人数量
+         */
+        private long maximumSize = 10000;
+    }
+
+    @Data
+    public static class Sampling {
+        /**
+         * 是否开启采样和限流，默认关闭
+         */
+        private boolean enabled = false;
+        /**
+         * 方法执行失败的日志是否总是记录
+         */
+        private boolean keepFailures = true;
+        /**
+         * 采样和限流规则，type 和 subType 是注解上配置的原始值
+         */
+        private List<SamplingRule> rules = new ArrayList<>();
+    }
+
+    @Data
+    public static class SamplingRule {
+        private String type;
+        /**
+         * 为空的时候匹配 type 下没有单独配置规则的所有 subType
+         */
+        private String subType;
+        /**
+         * 采样率，0 到 1，默认全部记录
+         */
+        private double rate = 1.0;
+        /**
+         * 每秒最多记录的日志数量，小于等于 0 的时候不限流
+         */
+        private double permitsPerSecond = 0;
+    }
 }
@@ -4,18 +4,30 @@ import com.mzt.logapi.service.*;
 import com.mzt.logapi.service.impl.*;
 import com.mzt.logapi.starter.annotation.EnableLogRecord;
 import com.mzt.logapi.starter.diff.DefaultDiffItemsToLogContentService;
+import com.mzt.logapi.starter.diff.DiffLogFieldDiffer;
+import com.mzt.logapi.starter.diff.DiffMode;
 import com.mzt.logapi.starter.diff.IDiffItemsToLogContentService;
+import com.mzt.logapi.starter.support.async.AsyncLogRecordDispatcher;
 import com.mzt.logapi.starter.support.aop.BeanFactoryLogRecordAdvisor;
 import com.mzt.logapi.starter.support.aop.LogRecordInterceptor;
 import com.mzt.logapi.starter.support.aop.LogRecordOperationSource;
 import com.mzt.logapi.starter.support.parse.LogFunctionParser;
+import com.mzt.logapi.starter.support.parse.LogRecordExpressionEvaluator;
+import com.mzt.logapi.starter.support.parse.LogRecordExpressionMetricsBinder;
+import com.mzt.logapi.starter.support.sampling.LogRecordSampler;
+import com.mzt.logapi.starter.support.sampling.LogRecordSamplingMetricsBinder;
 import lombok.extern.slf4j.Slf4j;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.context.annotation.ImportAware;
 import org.springframework.context.annotation.Role;
 import org.springframework.core.annotation.AnnotationAttributes;
@@ -41,10 +53,20 @@ public class LogRecordProxyAutoConfiguration implements ImportAware {
         return new LogRecordOperationSource();
     }
 
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public LogRecordExpressionEvaluator logRecordExpressionEvaluator(LogRecordProperties logRecordProperties) {
+        return new LogRecordExpressionEvaluator(logRecordProperties.getSpelCompilerMode());
+    }
+
     @Bean
     @ConditionalOnMissingBean(IFunctionService.class)
     public IFunctionService functionService(ParseFunctionFactory parseFunctionFactory) {
-        return new DefaultFunctionServiceImpl(parseFunctionFactory);
+        DefaultFunctionServiceImpl functionService = new DefaultFunctionServiceImpl(parseFunctionFactory);
+        if (enableLogRecord != null) {
+            functionService.setTenant(enableLogRecord.getString("tenant"));
+        }
+        return functionService;
     }
 
     @Bean
@@ -61,11 +83,13 @@ public class LogRecordProxyAutoConfiguration implements ImportAware {
 
     @Bean
     @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
-    public BeanFactoryLogRecordAdvisor logRecordAdvisor(IFunctionService functionService, DiffParseFunction diffParseFunction) {
+    public BeanFactoryLogRecordAdvisor logRecordAdvisor(IFunctionService functionService, DiffParseFunction diffParseFunction,
+                                                        LogRecordExpressionEvaluator logRecordExpressionEvaluator,
+                                                        LogRecordProperties logRecordProperties) {
         BeanFactoryLogRecordAdvisor advisor =
                 new BeanFactoryLogRecordAdvisor();
         advisor.setLogRecordOperationSource(logRecordOperationSource());
-        advisor.setAdvice(logRecordInterceptor(functionService, diffParseFunction));
+        advisor.setAdvice(logRecordInterceptor(functionService, diffParseFunction, logRecordExpressionEvaluator, logRecordProperties));
         return advisor;
     }
 
@@ -75,15 +99,65 @@ public class LogRecordProxyAutoConfiguration implements ImportAware {
         return new DefaultLogRecordPerformanceMonitor();
     }
 
+    /**
+     * classpath 中有 micrometer 的时候默认使用 Micrometer 记录耗时，内部类先于外面的 @Bean 注册
+     */
+    @Configuration
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    static class MicrometerPerformanceMonitorConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean(ILogRecordPerformanceMonitor.class)
+        public ILogRecordPerformanceMonitor micrometerLogRecordPerformanceMonitor(ObjectProvider<MeterRegistry> meterRegistryProvider) {
+            return new MicrometerLogRecordPerformanceMonitor(meterRegistryProvider);
+        }
+
+        @Bean
+        public FunctionCacheMetricsBinder functionCacheMetricsBinder(ObjectProvider<IFunctionService> functionServiceProvider,
+                                                                     ObjectProvider<MeterRegistry> meterRegistryProvider) {
+            return new FunctionCacheMetricsBinder(functionServiceProvider, meterRegistryProvider);
+        }
+
+        @Bean
+        public OperatorCacheMetricsBinder operatorCacheMetricsBinder(ObjectProvider<LogRecordInterceptor> interceptorProvider,
+                                                                     ObjectProvider<MeterRegistry> meterRegistryProvider) {
+            return new OperatorCacheMetricsBinder(interceptorProvider, meterRegistryProvider);
+        }
+
+        @Bean
+        public LogRecordSamplingMetricsBinder logRecordSamplingMetricsBinder(ObjectProvider<LogRecordSampler> samplerProvider,
+                                                                             ObjectProvider<MeterRegistry> meterRegistryProvider) {
+            return new LogRecordSamplingMetricsBinder(samplerProvider, meterRegistryProvider);
+        }
+
+        @Bean
+        public LogRecordExpressionMetricsBinder logRecordExpressionMetricsBinder(ObjectProvider<LogRecordExpressionEvaluator> evaluatorProvider,
+                                                                                 ObjectProvider<MeterRegistry> meterRegistryProvider) {
+            return new LogRecordExpressionMetricsBinder(evaluatorProvider, meterRegistryProvider);
+        }
+    }
+
     @Bean
     @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
-    public LogRecordInterceptor logRecordInterceptor(IFunctionService functionService, DiffParseFunction diffParseFunction) {
+    LogRecordContextInitializer logRecordContextInitializer(LogRecordProperties logRecordProperties) {
+        return new LogRecordContextInitializer(logRecordProperties.isContextInheritable());
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    @DependsOn("logRecordContextInitializer")
+    public LogRecordInterceptor logRecordInterceptor(IFunctionService functionService, DiffParseFunction diffParseFunction,
+                                                     LogRecordExpressionEvaluator logRecordExpressionEvaluator,
+                                                     LogRecordProperties logRecordProperties) {
         LogRecordInterceptor interceptor = new LogRecordInterceptor();
         interceptor.setLogRecordOperationSource(logRecordOperationSource());
+        interceptor.setExpressionEvaluator(logRecordExpressionEvaluator);
         interceptor.setTenant(enableLogRecord.getString("tenant"));
         interceptor.setLogFunctionParser(logFunctionParser(functionService));
         interceptor.setDiffParseFunction(diffParseFunction);
-        interceptor.setLogRecordPerformanceMonitor(logRecordPerformanceMonitor());
+        interceptor.setParallelBeforeFunction(logRecordProperties.getBeforeFunction());
+        interceptor.setOperatorCache(logRecordProperties.getOperatorCache());
+        interceptor.setDeferred(logRecordProperties.getDeferred());
         return interceptor;
     }
 
@@ -93,9 +167,20 @@ public class LogRecordProxyAutoConfiguration implements ImportAware {
     }
 
     @Bean
-    public DiffParseFunction diffParseFunction(IDiffItemsToLogContentService diffItemsToLogContentService) {
+    public DiffParseFunction diffParseFunction(IDiffItemsToLogContentService diffItemsToLogContentService,
+                                               LogRecordProperties logRecordProperties) {
         DiffParseFunction diffParseFunction = new DiffParseFunction();
         diffParseFunction.setDiffItemsToLogContentService(diffItemsToLogContentService);
+        diffParseFunction.setDiffLogFieldOnly(logRecordProperties.isDiffLogFieldOnly());
+        diffParseFunction.setDiffMode(logRecordProperties.getDiffMode());
+        if (logRecordProperties.getDiffMode() == DiffMode.FIELD) {
+            if (!(diffItemsToLogContentService instanceof DefaultDiffItemsToLogContentService)) {
+                throw new IllegalStateException("mzt.log.record.diff-mode=FIELD requires the IDiffItemsToLogContentService bean to extend "
+                        + "DefaultDiffItemsToLogContentService, but got " + diffItemsToLogContentService.getClass().getName());
+            }
+            diffParseFunction.setDiffLogFieldDiffer(new DiffLogFieldDiffer(
+                    (DefaultDiffItemsToLogContentService) diffItemsToLogContentService, logRecordProperties));
+        }
         return diffParseFunction;
     }
 
@@ -120,6 +205,18 @@ public class LogRecordProxyAutoConfiguration implements ImportAware {
         return new DefaultLogRecordServiceImpl();
     }
 
+    @Bean
+    @ConditionalOnProperty(prefix = "mzt.log.record.async", name = "enabled", havingValue = "true")
+    public AsyncLogRecordDispatcher asyncLogRecordDispatcher(ILogRecordService logRecordService, LogRecordProperties logRecordProperties) {
+        return new AsyncLogRecordDispatcher(logRecordService, logRecordProperties.getAsync());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "mzt.log.record.sampling", name = "enabled", havingValue = "true")
+    public LogRecordSampler logRecordSampler(LogRecordProperties logRecordProperties) {
+        return new LogRecordSampler(logRecordProperties.getSampling());
+    }
+
     @Override
     public void setImportMetadata(AnnotationMetadata importMetadata) {
         this.enableLogRecord = AnnotationAttributes.fromMap(
@@ -7,11 +7,15 @@ import com.mzt.logapi.starter.configuration.LogRecordProperties;
 import de.danielbechler.diff.node.DiffNode;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.ReflectionUtils;
 import org.springframework.util.StringUtils;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.function.Function;
 
 /**
  * @author muzhantong
@@ -53,7 +57,8 @@ public class DefaultDiffItemsToLogContentService implements IDiffItemsToLogConte
         boolean valueIsCollection = valueIsCollection(node, sourceObject, targetObject);
         //获取值的转换函数
         DiffNode.State state = node.getState();
-        String logContent = getDiffLogContent(filedLogName, node, state, sourceObject, targetObject, diffLogFieldAnnotation.function(), valueIsCollection);
+        String logContent = getDiffLogContent(filedLogName, state, getFieldValue(node, sourceObject), getFieldValue(node, targetObject),
+                diffLogFieldAnnotation.function(), diffLogFieldAnnotation.identityKey(), valueIsCollection);
         if (!StringUtils.isEmpty(logContent)) {
             stringBuilder.append(logContent).append(logRecordProperties.getFieldSeparator());
         }
@@ -98,23 +103,44 @@ public class DefaultDiffItemsToLogContentService implements IDiffItemsToLogConte
     }
 
     public String getDiffLogContent(String filedLogName, DiffNode node, DiffNode.State state, Object sourceObject, Object targetObject, String functionName, boolean valueIsCollection) {
+        return getDiffLogContent(filedLogName, state, getFieldValue(node, sourceObject), getFieldValue(node, targetObject), functionName, "", valueIsCollection);
+    }
+
+    /**
+     * 根据字段修改前后的值生成日志内容，不依赖 DiffNode
+     *
+     * @param filedLogName      字段在日志中的名称
+     * @param state             字段的修改状态
+     * @param sourceValue       修改前的值
+     * @param targetValue       修改后的值
+     * @param functionName      值的转换函数
+     * @param identityKey       集合元素的唯一标识属性名，可以为空
+     * @param valueIsCollection 是否是集合类型的字段
+     * @return 日志内容
+     */
+    public String getDiffLogContent(String filedLogName, DiffNode.State state, Object sourceValue, Object targetValue,
+                                    String functionName, String identityKey, boolean valueIsCollection) {
         //集合走单独的diff模板
         if (valueIsCollection) {
-            Collection<Object> sourceList = getListValue(node, sourceObject);
-            Collection<Object> targetList = getListValue(node, targetObject);
+            Collection<Object> sourceList = getListValue(sourceValue);
+            Collection<Object> targetList = getListValue(targetValue);
+            if (!StringUtils.isEmpty(identityKey)) {
+                return getKeyedListDiffLogContent(filedLogName, sourceList, targetList, functionName, identityKey);
+            }
             Collection<Object> addItemList = listSubtract(targetList, sourceList);
             Collection<Object> delItemList = listSubtract(sourceList, targetList);
-            String listAddContent = listToContent(functionName, addItemList);
-            String listDelContent = listToContent(functionName, delItemList);
+            Function<Object, String> functionValues = getFunctionValues(functionName, addItemList, delItemList);
+            String listAddContent = listToContent(functionValues, addItemList);
+            String listDelContent = listToContent(functionValues, delItemList);
             return logRecordProperties.formatList(filedLogName, listAddContent, listDelContent);
         }
         switch (state) {
             case ADDED:
-                return logRecordProperties.formatAdd(filedLogName, getFunctionValue(getFieldValue(node, targetObject), functionName));
+                return logRecordProperties.formatAdd(filedLogName, getFunctionValue(targetValue, functionName));
             case CHANGED:
-                return logRecordProperties.formatUpdate(filedLogName, getFunctionValue(getFieldValue(node, sourceObject), functionName), getFunctionValue(getFieldValue(node, targetObject), functionName));
+                return logRecordProperties.formatUpdate(filedLogName, getFunctionValue(sourceValue, functionName), getFunctionValue(targetValue, functionName));
             case REMOVED:
-                return logRecordProperties.formatDeleted(filedLogName, getFunctionValue(getFieldValue(node, sourceObject), functionName));
+                return logRecordProperties.formatDeleted(filedLogName, getFunctionValue(sourceValue, functionName));
             default:
                 log.warn("diff log not support");
                 return "";
@@ -122,26 +148,150 @@ public class DefaultDiffItemsToLogContentService implements IDiffItemsToLogConte
         }
     }
 
-    private Collection<Object> getListValue(DiffNode node, Object object) {
-        Object fieldSourceValue = getFieldValue(node, object);
-        //noinspection unchecked
-        return fieldSourceValue == null ? Lists.newArrayList() : (Collection<Object>) fieldSourceValue;
+    @SuppressWarnings("unchecked")
+    private Collection<Object> getListValue(Object fieldValue) {
+        return fieldValue == null ? Lists.newArrayList() : (Collection<Object>) fieldValue;
     }
 
+    /**
+     * 按元素的唯一标识匹配修改前后的元素：只在修改后出现的是添加项，只在修改前出现的是删除项，标识相同内容不同的是修改项
+     */
+    private String getKeyedListDiffLogContent(String filedLogName, Collection<Object> sourceList, Collection<Object> targetList,
+                                              String functionName, String identityKey) {
+        List<Object> sources = new ArrayList<>(sourceList);
+        Function<Object, Object> identityGetter = new IdentityGetter(identityKey);
+        Map<Object, LinkedList<Integer>> sourceIndexesByKey = new HashMap<>(capacity(sources.size()));
+        for (int i = 0; i < sources.size(); i++) {
+            sourceIndexesByKey.computeIfAbsent(identityGetter.apply(sources.get(i)), k -> new LinkedList<>()).add(i);
+        }
+        boolean[] matched = new boolean[sources.size()];
+        List<Object> addItemList = new ArrayList<>();
+        List<Object> modSourceList = new ArrayList<>();
+        List<Object> modTargetList = new ArrayList<>();
+        for (Object target : targetList) {
+            LinkedList<Integer> indexes = sourceIndexesByKey.get(identityGetter.apply(target));
+            if (indexes == null || indexes.isEmpty()) {
+                addItemList.add(target);
+                continue;
+            }
+            int index = indexes.removeFirst();
+            matched[index] = true;
+            Object source = sources.get(index);
+            if (!Objects.equals(source, target)) {
+                modSourceList.add(source);
+                modTargetList.add(target);
+            }
+        }
+        List<Object> delItemList = new ArrayList<>();
+        for (int i = 0; i < sources.size(); i++) {
+            if (!matched[i]) {
+                delItemList.add(sources.get(i));
+            }
+        }
+        Function<Object, String> functionValues = getFunctionValues(functionName, addItemList, delItemList, modSourceList, modTargetList);
+        StringBuilder listModContent = new StringBuilder();
+        for (int i = 0; i < modSourceList.size(); i++) {
+            listModContent.append(functionValues.apply(modSourceList.get(i))).append(logRecordProperties.getListItemModifyWord())
+                    .append(functionValues.apply(modTargetList.get(i))).append(logRecordProperties.getListItemSeparator());
+        }
+        return logRecordProperties.formatList(filedLogName, listToContent(functionValues, addItemList), listToContent(functionValues, delItemList),
+                trimListItemSeparator(listModContent));
+    }
+
+    /**
+     * 读取集合元素的唯一标识，属性的读方法按元素的类型只解析一次，同一个集合里的元素复用
+     */
+    private static class IdentityGetter implements Function<Object, Object> {
+        private final String identityKey;
+        private Class<?> itemClass;
+        private Method readMethod;
+
+        IdentityGetter(String identityKey) {
+            this.identityKey = identityKey;
+        }
+
+        @Override
+        public Object apply(Object item) {
+            if (item == null) {
+                return null;
+            }
+            if (item instanceof Map) {
+                return ((Map<?, ?>) item).get(identityKey);
+            }
+            if (item.getClass() != itemClass) {
+                PropertyDescriptor descriptor = BeanUtils.getPropertyDescriptor(item.getClass(), identityKey);
+                if (descriptor == null || descriptor.getReadMethod() == null) {
+                    throw new IllegalArgumentException("identityKey [" + identityKey + "] not found in " + item.getClass());
+                }
+                readMethod = descriptor.getReadMethod();
+                itemClass = item.getClass();
+            }
+            return ReflectionUtils.invokeMethod(readMethod, item);
+        }
+    }
+
+    /**
+     * 多重集合的差集：minuend 中的每个元素抵消 subTractor 中一个相等的元素，结果保持 minuend 中的顺序
+     */
     private Collection<Object> listSubtract(Collection<Object> minuend, Collection<Object> subTractor) {
-        Collection<Object> addItemList = new ArrayList<>(minuend);
-        addItemList.removeAll(subTractor);
-        return addItemList;
+        if (subTractor.isEmpty()) {
+            return new ArrayList<>(minuend);
+        }
+        Map<Object, Integer> subTractorCounts = new HashMap<>(capacity(subTractor.size()));
+        for (Object item : subTractor) {
+            subTractorCounts.merge(item, 1, Integer::sum);
+        }
+        Collection<Object> result = new ArrayList<>();
+        for (Object item : minuend) {
+            Integer count = subTractorCounts.get(item);
+            if (count == null) {
+                result.add(item);
+            } else if (count == 1) {
+                subTractorCounts.remove(item);
+            } else {
+                subTractorCounts.put(item, count - 1);
+            }
+        }
+        return result;
+    }
+
+    private static int capacity(int expectedSize) {
+        return Math.max(16, (int) (expectedSize / 0.75f) + 1);
     }
 
-    private String listToContent(String functionName, Collection<Object> addItemList) {
+    /**
+     * 集合元素的转换：支持批量调用的函数把所有元素一次传给函数，其他函数逐个调用
+     */
+    @SafeVarargs
+    private final Function<Object, String> getFunctionValues(String functionName, Collection<Object>... itemLists) {
+        if (StringUtils.isEmpty(functionName) || !functionService.batchFunction(functionName)) {
+            return item -> getFunctionValue(item, functionName);
+        }
+        List<String> values = new ArrayList<>();
+        for (Collection<Object> itemList : itemLists) {
+            for (Object item : itemList) {
+                values.add(item.toString());
+            }
+        }
+        if (values.isEmpty()) {
+            return item -> getFunctionValue(item, functionName);
+        }
+        Map<Object, String> functionValues = functionService.batchApply(functionName, values);
+        return item -> functionValues.get(item.toString());
+    }
+
+    private String listToContent(Function<Object, String> functionValues, Collection<Object> addItemList) {
         StringBuilder listAddContent = new StringBuilder();
         if (!CollectionUtils.isEmpty(addItemList)) {
             for (Object item : addItemList) {
-                listAddContent.append(getFunctionValue(item, functionName)).append(logRecordProperties.getListItemSeparator());
+                listAddContent.append(functionValues.apply(item)).append(logRecordProperties.getListItemSeparator());
             }
         }
-        return listAddContent.toString().replaceAll(logRecordProperties.getListItemSeparator() + "$", "");
+        return trimListItemSeparator(listAddContent);
+    }
+
+    private String trimListItemSeparator(StringBuilder content) {
+        return content.toString().replaceAll(logRecordProperties.getListItemSeparator() + "$", "");
     }
 
     private String getFunctionValue(Object canonicalGet, String functionName) {
@@ -0,0 +1,193 @@
+package com.mzt.logapi.starter.diff;
+
+import com.mzt.logapi.starter.annotation.DiffLogField;
+import com.mzt.logapi.starter.configuration.LogRecordProperties;
+import de.danielbechler.diff.node.DiffNode;
+import org.springframework.beans.BeanUtils;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.time.temporal.TemporalAccessor;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * DiffMode.FIELD 使用的比较器：每个类型只扫描一次属性，缓存 @DiffLogField 字段和嵌套对象字段的 MethodHandle，
+ * 比较的时候只读取这些字段，不构建完整的 DiffNode 树。
+ * 属性按名称排序、嵌套对象深度优先，和 java-object-diff 的遍历顺序一致，生成的日志和 OBJECT_DIFF 模式相同
+ */
+public class DiffLogFieldDiffer {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private final Map<Class<?>, List<FieldAccessor>> accessorCache = new ConcurrentHashMap<>(64);
+    private final DefaultDiffItemsToLogContentService logContentService;
+    private final LogRecordProperties logRecordProperties;
+
+    /**
+     * @param logContentService   容器中的 IDiffItemsToLogContentService，字段的日志内容由它的 getDiffLogContent 生成，
+     *                            自定义实现继承 DefaultDiffItemsToLogContentService 覆盖这个方法即可在 FIELD 模式下生效
+     * @param logRecordProperties 日志格式配置
+     */
+    public DiffLogFieldDiffer(DefaultDiffItemsToLogContentService logContentService, LogRecordProperties logRecordProperties) {
+        this.logContentService = logContentService;
+        this.logRecordProperties = logRecordProperties;
+    }
+
+    public String diff(Object source, Object target) {
+        StringBuilder stringBuilder = new StringBuilder();
+        diffObject(source, target, source != null ? source.getClass() : target.getClass(), "", stringBuilder,
+                Collections.newSetFromMap(new IdentityHashMap<>()));
+        String separator = logRecordProperties.getFieldSeparator();
+        if (stringBuilder.length() > 0 && stringBuilder.lastIndexOf(separator) == stringBuilder.length() - separator.length()) {
+            stringBuilder.setLength(stringBuilder.length() - separator.length());
+        }
+        return stringBuilder.toString();
+    }
+
+    private void diffObject(Object source, Object target, Class<?> type, String fieldNamePrefix,
+                            StringBuilder stringBuilder, Set<Object> visiting) {
+        //循环引用的对象不再进入
+        if (source != null && !visiting.add(source) || target != null && !visiting.add(target)) {
+            return;
+        }
+        try {
+            for (FieldAccessor accessor : getAccessors(type)) {
+                Object sourceValue = accessor.get(source);
+                Object targetValue = accessor.get(target);
+                if (sourceValue == targetValue) {
+                    continue;
+                }
+                diffField(accessor, sourceValue, targetValue, fieldNamePrefix, stringBuilder, visiting);
+            }
+        } finally {
+            if (source != null) {
+                visiting.remove(source);
+            }
+            if (target != null) {
+                visiting.remove(target);
+            }
+        }
+    }
+
+    private void diffField(FieldAccessor accessor, Object sourceValue, Object targetValue, String fieldNamePrefix,
+                           StringBuilder stringBuilder, Set<Object> visiting) {
+        DiffLogField diffLogField = accessor.diffLogField;
+        Object value = sourceValue != null ? sourceValue : targetValue;
+        Class<?> valueType = value.getClass();
+        boolean sameType = sourceValue == null || targetValue == null || sourceValue.getClass() == targetValue.getClass();
+        if (sameType && !isValueType(valueType) && !(value instanceof Collection)) {
+            //自定义对象类型直接进入对象里面, diff
+            String prefix = diffLogField == null ? fieldNamePrefix
+                    : fieldNamePrefix.concat(diffLogField.name()).concat(logRecordProperties.getOfWord());
+            diffObject(sourceValue, targetValue, valueType, prefix, stringBuilder, visiting);
+            return;
+        }
+        if (diffLogField == null || valueEquals(sourceValue, targetValue)) {
+            return;
+        }
+        String filedLogName = fieldNamePrefix.concat(diffLogField.name());
+        if (filedLogName.isEmpty()) {
+            return;
+        }
+        DiffNode.State state = sourceValue == null ? DiffNode.State.ADDED
+                : targetValue == null ? DiffNode.State.REMOVED : DiffNode.State.CHANGED;
+        String logContent = logContentService.getDiffLogContent(filedLogName, state, sourceValue, targetValue,
+                diffLogField.function(), diffLogField.identityKey(), value instanceof Collection);
+        if (!logContent.isEmpty()) {
+            stringBuilder.append(logContent).append(logRecordProperties.getFieldSeparator());
+        }
+    }
+
+    private boolean valueEquals(Object sourceValue, Object targetValue) {
+        if (sourceValue instanceof BigDecimal && targetValue instanceof BigDecimal) {
+            return ((BigDecimal) sourceValue).compareTo((BigDecimal) targetValue) == 0;
+        }
+        return Objects.deepEquals(sourceValue, targetValue);
+    }
+
+    private List<FieldAccessor> getAccessors(Class<?> type) {
+        List<FieldAccessor> accessors = accessorCache.get(type);
+        if (accessors == null) {
+            accessors = scan(type);
+            accessorCache.put(type, accessors);
+        }
+        return accessors;
+    }
+
+    /**
+     * 扫描类型的属性：有 @DiffLogField 的属性，以及没有注解但可能是嵌套对象的属性
+     */
+    private List<FieldAccessor> scan(Class<?> type) {
+        PropertyDescriptor[] descriptors = BeanUtils.getPropertyDescriptors(type);
+        Arrays.sort(descriptors, Comparator.comparing(PropertyDescriptor::getName));
+        List<FieldAccessor> accessors = new ArrayList<>();
+        for (PropertyDescriptor descriptor : descriptors) {
+            Method readMethod = descriptor.getReadMethod();
+            if (readMethod == null || "class".equals(descriptor.getName())) {
+                continue;
+            }
+            Field field = ReflectionUtils.findField(type, descriptor.getName());
+            DiffLogField diffLogField = field == null ? null : field.getAnnotation(DiffLogField.class);
+            Class<?> propertyType = descriptor.getPropertyType();
+            if (diffLogField == null && (isValueType(propertyType) || Collection.class.isAssignableFrom(propertyType))) {
+                continue;
+            }
+            accessors.add(new FieldAccessor(diffLogField, toMethodHandle(readMethod)));
+        }
+        return Collections.unmodifiableList(accessors);
+    }
+
+    private MethodHandle toMethodHandle(Method readMethod) {
+        try {
+            ReflectionUtils.makeAccessible(readMethod);
+            return MethodHandles.lookup().unreflect(readMethod).asType(GETTER_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("can not access " + readMethod, e);
+        }
+    }
+
+    /**
+     * 按值比较、不进入里面比较的类型
+     */
+    private boolean isValueType(Class<?> type) {
+        if (type.isInterface() && !Map.class.isAssignableFrom(type) || type == Object.class) {
+            //运行时再按实际类型判断
+            return false;
+        }
+        return ClassUtils.isPrimitiveOrWrapper(type) || type.isArray() || type.isEnum()
+                || CharSequence.class.isAssignableFrom(type) || Number.class.isAssignableFrom(type)
+                || Date.class.isAssignableFrom(type) || TemporalAccessor.class.isAssignableFrom(type)
+                || Map.class.isAssignableFrom(type) || type.getName().startsWith("java.") || type.getName().startsWith("javax.");
+    }
+
+    private static final class FieldAccessor {
+        private final DiffLogField diffLogField;
+        private final MethodHandle getter;
+
+        private FieldAccessor(DiffLogField diffLogField, MethodHandle getter) {
+            this.diffLogField = diffLogField;
+            this.getter = getter;
+        }
+
+        private Object get(Object object) {
+            if (object == null) {
+                return null;
+            }
+            try {
+                return (Object) getter.invokeExact(object);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.mzt.logapi.starter.diff;
+
+import com.mzt.logapi.starter.annotation.DiffLogField;
+import de.danielbechler.diff.inclusion.Inclusion;
+import de.danielbechler.diff.inclusion.InclusionResolver;
+import de.danielbechler.diff.node.DiffNode;
+import de.danielbechler.diff.selector.BeanPropertyElementSelector;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 只比较有 @DiffLogField 注解的字段，以及类型里面（包括嵌套的对象）有 @DiffLogField 字段的对象，
+ * 其他字段不会出现在日志里，也就没必要去比较
+ */
+public class DiffLogFieldInclusionResolver implements InclusionResolver {
+
+    private final Map<Class<?>, Boolean> annotatedTypeCache = new ConcurrentHashMap<>(64);
+
+    @Override
+    public Inclusion getInclusion(DiffNode node) {
+        if (node.isRootNode() || !(node.getElementSelector() instanceof BeanPropertyElementSelector)) {
+            //集合元素、Map 的 entry 跟着父节点走
+            return Inclusion.DEFAULT;
+        }
+        if (node.getFieldAnnotation(DiffLogField.class) != null) {
+            return Inclusion.INCLUDED;
+        }
+        Class<?> valueType = node.getValueType();
+        return valueType == null || mayContainDiffLogField(valueType) ? Inclusion.INCLUDED : Inclusion.EXCLUDED;
+    }
+
+    @Override
+    public boolean enablesStrictIncludeMode() {
+        return false;
+    }
+
+    private boolean mayContainDiffLogField(Class<?> type) {
+        if (isPolymorphic(type)) {
+            return true;
+        }
+        Boolean annotated = annotatedTypeCache.get(type);
+        if (annotated == null) {
+            annotated = containsDiffLogField(type, new HashSet<>());
+            annotatedTypeCache.put(type, annotated);
+        }
+        return annotated;
+    }
+
+    private boolean containsDiffLogField(Class<?> type, Set<Class<?>> visited) {
+        if (type.isPrimitive() || type.isArray() || type.isEnum() || isJdkType(type) || !visited.add(type)) {
+            return false;
+        }
+        for (Class<?> clazz = type; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                if (field.isAnnotationPresent(DiffLogField.class)) {
+                    return true;
+                }
+                Class<?> fieldType = field.getType();
+                if (isPolymorphic(fieldType) || containsDiffLogField(fieldType, visited)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Object、接口和抽象类运行时的类型不确定，当作可能有 @DiffLogField 字段
+     */
+    private boolean isPolymorphic(Class<?> type) {
+        return !type.isPrimitive() && !type.isArray()
+                && (type == Object.class || type.isInterface() || Modifier.isAbstract(type.getModifiers()));
+    }
+
+    private boolean isJdkType(Class<?> type) {
+        String name = type.getName();
+        return name.startsWith("java.") || name.startsWith("javax.");
+    }
+}
@@ -0,0 +1,16 @@
+package com.mzt.logapi.starter.diff;
+
+/**
+ * _DIFF 函数的对象比较方式
+ */
+public enum DiffMode {
+    /**
+     * 使用 java-object-diff 比较整个对象，再由 IDiffItemsToLogContentService 生成日志
+     */
+    OBJECT_DIFF,
+    /**
+     * 只比较 @DiffLogField 注解的字段（包括嵌套对象里的），字段按类型扫描一次并缓存访问器，
+     * 日志格式和 DefaultDiffItemsToLogContentService 相同；集合只比较集合本身，不进入集合元素里面比较
+     */
+    FIELD
+}
@@ -1,16 +1,23 @@
 package com.mzt.logapi.starter.support.aop;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Lists;
+import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
 import com.mzt.logapi.beans.CodeVariableType;
 import com.mzt.logapi.beans.LogRecord;
 import com.mzt.logapi.beans.LogRecordOps;
+import com.mzt.logapi.beans.LogRecordPerformance;
 import com.mzt.logapi.context.LogRecordContext;
 import com.mzt.logapi.service.ILogRecordPerformanceMonitor;
 import com.mzt.logapi.service.ILogRecordService;
 import com.mzt.logapi.service.IOperatorGetService;
+import com.mzt.logapi.service.impl.CachingOperatorGetService;
+import com.mzt.logapi.starter.configuration.LogRecordProperties;
+import com.mzt.logapi.starter.support.async.AsyncLogRecordDispatcher;
+import com.mzt.logapi.starter.support.parse.LogRecordInvocationContext;
+import com.mzt.logapi.starter.support.parse.LogRecordTemplate;
 import com.mzt.logapi.starter.support.parse.LogRecordValueParser;
+import com.mzt.logapi.starter.support.sampling.LogRecordSampler;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -18,16 +25,26 @@ import lombok.extern.slf4j.Slf4j;
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
 import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
-import org.springframework.util.CollectionUtils;
-import org.springframework.util.StopWatch;
+import org.springframework.core.MethodClassKey;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
 
 import java.io.Serializable;
 import java.lang.reflect.Method;
 import java.util.*;
-
-import static com.mzt.logapi.service.ILogRecordPerformanceMonitor.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 /**
  * DATE 5:39 PM
@@ -35,7 +52,10 @@ import static com.mzt.logapi.service.ILogRecordPerformanceMonitor.*;
  * @author mzt.
  */
 @Slf4j
-public class LogRecordInterceptor extends LogRecordValueParser implements InitializingBean, MethodInterceptor, Serializable {
+public class LogRecordInterceptor extends LogRecordValueParser implements InitializingBean, DisposableBean, MethodInterceptor, Serializable {
+
+    private static final boolean REACTOR_PRESENT = ClassUtils.isPresent("reactor.core.publisher.Mono",
+            LogRecordInterceptor.class.getClassLoader());
 
     private LogRecordOperationSource logRecordOperationSource;
 
@@ -47,6 +67,35 @@ public class LogRecordInterceptor extends LogRecordValueParser implements Initia
 
     private ILogRecordPerformanceMonitor logRecordPerformanceMonitor;
 
+    private AsyncLogRecordDispatcher logRecordDispatcher;
+
+    /**
+     * 返回 CompletableFuture、Mono、Flux 的方法完成之后在这里解析和保存日志
+     */
+    private Executor deferredExecutor;
+
+    /**
+     * 没有设置 deferredExecutor 的时候按这个配置创建线程池
+     */
+    private LogRecordProperties.Deferred deferredConfig;
+
+    /**
+     * 拦截器自己创建的线程池，销毁的时候关闭
+     */
+    private ThreadPoolExecutor ownedDeferredExecutor;
+
+    /**
+     * 开启之后 getUser 的结果按 IOperatorGetService#cacheKey 缓存
+     */
+    private LogRecordProperties.OperatorCache operatorCache;
+
+    /**
+     * 没有开启采样的时候为 null
+     */
+    private LogRecordSampler logRecordSampler;
+
+    private final Map<MethodClassKey, LogRecordMethodPlan> methodPlanCache = new ConcurrentHashMap<>(1024);
+
     @Override
     public Object invoke(MethodInvocation invocation) throws Throwable {
         Method method = invocation.getMethod();
@@ -54,105 +103,255 @@ public class LogRecordInterceptor extends LogRecordValueParser implements Initia
     }
 
     private Object execute(MethodInvocation invoker, Object target, Method method, Object[] args) throws Throwable {
-        StopWatch stopWatch = new StopWatch(MONITOR_NAME);
-        stopWatch.start(MONITOR_TASK_BEFORE_EXECUTE);
+        boolean monitorEnabled = isMonitorEnabled();
+        long beforeExecuteStart = monitorEnabled ? System.nanoTime() : 0L;
         Class<?> targetClass = getTargetClass(target);
         Object ret = null;
         MethodExecuteResult methodExecuteResult = new MethodExecuteResult(true, null, "");
+        LogRecordInvocationContext invocationContext = new LogRecordInvocationContext(method, args, targetClass);
         LogRecordContext.putEmptySpan();
-        Collection<LogRecordOps> operations = new ArrayList<>();
-        Map<String, String> functionNameAndReturnMap = new HashMap<>();
+        LogRecordMethodPlan plan = LogRecordMethodPlan.EMPTY;
+        boolean[] dropped = null;
+        Map<String, String> functionNameAndReturnMap = Collections.emptyMap();
         try {
-            operations = logRecordOperationSource.computeLogRecordOperations(method, targetClass);
-            List<String> spElTemplates = getBeforeExecuteFunctionTemplate(operations);
-            functionNameAndReturnMap = processBeforeExecuteFunctionTemplate(spElTemplates, targetClass, method, args);
+            plan = getMethodPlan(method, targetClass);
+            //采样和限流在解析任何模板之前决定
+            dropped = sample(plan);
+            List<LogRecordTemplate> beforeExecuteTemplates = dropped == null ? plan.getBeforeExecuteTemplates()
+                    : plan.getBeforeExecuteTemplates(dropped, logRecordSampler.isKeepFailures());
+            //没有执行前函数的方法不创建解析上下文
+            if (!beforeExecuteTemplates.isEmpty()) {
+                functionNameAndReturnMap = processBeforeExecuteFunctionTemplate(beforeExecuteTemplates, invocationContext);
+            }
         } catch (Exception e) {
             log.error("log record parse before function exception", e);
-        } finally {
-            stopWatch.stop();
         }
+        long beforeExecuteNanos = monitorEnabled ? System.nanoTime() - beforeExecuteStart : 0L;
 
         try {
             ret = invoker.proceed();
         } catch (Exception e) {
             methodExecuteResult = new MethodExecuteResult(false, e, e.getMessage());
         }
-        stopWatch.start(MONITOR_TASK_AFTER_EXECUTE);
+        if (methodExecuteResult.isSuccess() && !plan.isEmpty() && isAsyncResult(ret)) {
+            //异步返回值完成之后再记录日志，方法里放入的变量通过快照带到回调里
+            LogRecordContext.Snapshot snapshot = LogRecordContext.snapshot();
+            LogRecordContext.clear();
+            LogRecordMethodPlan deferredPlan = plan;
+            boolean[] deferredDropped = dropped;
+            Map<String, String> deferredFunctionNameAndReturnMap = functionNameAndReturnMap;
+            //操作人一般放在当前线程里，在回调之前取出来
+            String operatorIdFromService = getOperatorIdFromService(plan);
+            return deferAfterExecute(ret, (result, throwable) -> {
+                try (LogRecordContext.Scope ignored = snapshot.attach()) {
+                    afterExecute(invocationContext, deferredPlan, deferredDropped, result, throwable, deferredFunctionNameAndReturnMap,
+                            operatorIdFromService, monitorEnabled, beforeExecuteNanos);
+                }
+            });
+        }
+        try {
+            afterExecute(invocationContext, plan, dropped, ret, methodExecuteResult.getThrowable(), functionNameAndReturnMap,
+                    null, monitorEnabled, beforeExecuteNanos);
+        } finally {
+            LogRecordContext.clear();
+        }
+        if (methodExecuteResult.throwable != null) {
+            throw methodExecuteResult.throwable;
+        }
+        return ret;
+    }
+
+    private void afterExecute(LogRecordInvocationContext invocationContext, LogRecordMethodPlan plan, boolean[] dropped, Object ret,
+                              Throwable throwable, Map<String, String> functionNameAndReturnMap, String operatorIdFromService,
+                              boolean monitorEnabled, long beforeExecuteNanos) {
+        long afterExecuteStart = monitorEnabled ? System.nanoTime() : 0L;
+        long persistNanos = 0L;
+        boolean success = throwable == null;
         try {
-            if (!CollectionUtils.isEmpty(operations)) {
-                recordExecute(ret, method, args, operations, targetClass,
-                        methodExecuteResult.isSuccess(), methodExecuteResult.getErrorMsg(), functionNameAndReturnMap);
+            if (!plan.isEmpty()) {
+                invocationContext.setResult(ret, success ? "" : throwable.getMessage());
+                persistNanos = recordExecute(invocationContext, plan, dropped, success, functionNameAndReturnMap,
+                        operatorIdFromService, monitorEnabled);
             }
         } catch (Exception t) {
             //记录日志错误不要影响业务
             log.error("log record parse exception", t);
         } finally {
-            LogRecordContext.clear();
-            stopWatch.stop();
+            if (monitorEnabled) {
+                long afterExecuteNanos = System.nanoTime() - afterExecuteStart - persistNanos;
+                recordPerformance(invocationContext.getMethod(), invocationContext.getTargetClass(), plan, success,
+                        beforeExecuteNanos, afterExecuteNanos, persistNanos);
+            }
+        }
+    }
+
+    private boolean isAsyncResult(Object ret) {
+        return ret instanceof CompletionStage || REACTOR_PRESENT && ReactiveResultSupport.isReactive(ret);
+    }
+
+    /**
+     * 在返回值完成的时候把日志记录交给 deferredExecutor，不阻塞完成返回值的线程（比如 Netty 的 event loop）。
+     * CompletionStage 返回原来的对象，Mono、Flux 返回加上回调之后的对象
+     */
+    private Object deferAfterExecute(Object ret, BiConsumer<Object, Throwable> afterExecute) {
+        BiConsumer<Object, Throwable> onComplete = (result, throwable) -> {
             try {
-                logRecordPerformanceMonitor.print(stopWatch);
+                deferredExecutor.execute(() -> afterExecute.accept(result, unwrap(throwable)));
+            } catch (RejectedExecutionException e) {
+                //队列满了的时候丢弃这条日志，不能在完成返回值的线程里解析和保存
+                log.error("log record deferred queue is full, log dropped");
             } catch (Exception e) {
-                log.error("execute exception", e);
+                log.error("log record deferred execute exception", e);
             }
+        };
+        if (ret instanceof CompletionStage) {
+            ((CompletionStage<?>) ret).whenComplete(onComplete);
+            return ret;
         }
-        if (methodExecuteResult.throwable != null) {
-            throw methodExecuteResult.throwable;
+        return ReactiveResultSupport.defer(ret, onComplete);
+    }
+
+    private Throwable unwrap(Throwable throwable) {
+        if ((throwable instanceof CompletionException || throwable instanceof ExecutionException) && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+        return throwable;
+    }
+
+    private boolean isMonitorEnabled() {
+        try {
+            return logRecordPerformanceMonitor != null && logRecordPerformanceMonitor.enabled();
+        } catch (Exception e) {
+            log.error("execute exception", e);
+            return false;
+        }
+    }
+
+    private void recordPerformance(Method method, Class<?> targetClass, LogRecordMethodPlan plan, boolean success,
+                                   long beforeExecuteNanos, long afterExecuteNanos, long persistNanos) {
+        try {
+            logRecordPerformanceMonitor.record(LogRecordPerformance.builder()
+                    .method(method)
+                    .targetClass(targetClass)
+                    .beforeExecuteNanos(beforeExecuteNanos)
+                    .afterExecuteNanos(afterExecuteNanos)
+                    .persistNanos(persistNanos)
+                    .success(success)
+                    .templateCount(plan.getTemplateCount())
+                    .build());
+        } catch (Exception e) {
+            log.error("execute exception", e);
         }
-        return ret;
     }
 
-    private List<String> getBeforeExecuteFunctionTemplate(Collection<LogRecordOps> operations) {
-        List<String> spElTemplates = new ArrayList<>();
-        for (LogRecordOps operation : operations) {
-            //执行之前的函数，失败模版不解析
-            List<String> templates = getSpElTemplates(operation, operation.getSuccessLogTemplate());
-            if (!CollectionUtils.isEmpty(templates)) {
-                spElTemplates.addAll(templates);
+    /**
+     * @return 被采样或者限流丢弃的注解，和 operationPlans 一一对应；都不丢弃的时候为 null
+     */
+    private boolean[] sample(LogRecordMethodPlan plan) {
+        if (!plan.isSampled()) {
+            return null;
+        }
+        boolean[] dropped = null;
+        List<LogRecordMethodPlan.OperationPlan> operationPlans = plan.getOperationPlans();
+        for (int i = 0; i < operationPlans.size(); i++) {
+            LogRecordSampler.Rule samplingRule = operationPlans.get(i).getSamplingRule();
+            if (samplingRule != null && !samplingRule.tryAcquire()) {
+                if (dropped == null) {
+                    dropped = new boolean[operationPlans.size()];
+                }
+                dropped[i] = true;
             }
         }
-        return spElTemplates;
+        return dropped;
     }
 
-    private void recordExecute(Object ret, Method method, Object[] args, Collection<LogRecordOps> operations,
-                               Class<?> targetClass, boolean success, String errorMsg, Map<String, String> functionNameAndReturnMap) {
-        for (LogRecordOps operation : operations) {
+    /**
+     * 方法的执行计划只在第一次调用的时候生成，没有注解的方法也缓存一个空的计划
+     */
+    private LogRecordMethodPlan getMethodPlan(Method method, Class<?> targetClass) {
+        MethodClassKey cacheKey = new MethodClassKey(method, targetClass);
+        LogRecordMethodPlan plan = methodPlanCache.get(cacheKey);
+        if (plan == null) {
+            plan = LogRecordMethodPlan.create(logRecordOperationSource.getLogRecordOperations(method, targetClass),
+                    getExpressionEvaluator(), this::isBeforeFunction, logRecordSampler);
+            methodPlanCache.put(cacheKey, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * @param resolvedOperatorId 已经从 IOperatorGetService 取到的操作人，空字符串表示取过但是没有取到；为 null 的时候在这里取
+     * @return 保存日志的耗时，没有开启监控的时候为 0
+     */
+    private long recordExecute(LogRecordInvocationContext invocationContext, LogRecordMethodPlan plan, boolean[] dropped,
+                               boolean success, Map<String, String> functionNameAndReturnMap, String resolvedOperatorId,
+                               boolean monitorEnabled) {
+        long persistNanos = 0L;
+        //操作人在第一条需要记录的日志用到的时候才取，一次调用只取一次
+        String operatorIdFromService = resolvedOperatorId;
+        List<LogRecordMethodPlan.OperationPlan> operationPlans = plan.getOperationPlans();
+        for (int i = 0; i < operationPlans.size(); i++) {
+            LogRecordMethodPlan.OperationPlan operationPlan = operationPlans.get(i);
             try {
-                String action = getActionContent(success, operation);
-                if (StringUtils.isEmpty(action)) {
-                    //没有日志内容则忽略
+                if (dropped != null && dropped[i]) {
+                    if (success || !logRecordSampler.isKeepFailures()) {
+                        continue;
+                    }
+                    operationPlan.getSamplingRule().recordKeptFailure();
+                }
+                //需要解析的表达式在生成计划的时候已经确定，没有日志内容则忽略
+                List<LogRecordTemplate> spElTemplates = operationPlan.getTemplates(success);
+                if (spElTemplates == null) {
                     continue;
                 }
-                //获取需要解析的表达式
-                List<String> spElTemplates = getSpElTemplates(operation, action);
-                String operatorIdFromService = getOperatorIdFromServiceAndPutTemplate(operation, spElTemplates);
-
-                Map<String, String> expressionValues = processTemplate(spElTemplates, ret, targetClass, method, args, errorMsg, functionNameAndReturnMap);
-                if (logConditionPassed(operation.getCondition(), expressionValues)) {
-                    LogRecord logRecord = LogRecord.builder()
-                            .tenant(tenantId)
-                            .type(expressionValues.get(operation.getType()))
-                            .bizNo(expressionValues.get(operation.getBizNo()))
-                            .operator(getRealOperatorId(operation, operatorIdFromService, expressionValues))
-                            .subType(expressionValues.get(operation.getSubType()))
-                            .extra(expressionValues.get(operation.getExtra()))
-                            .codeVariable(getCodeVariable(method))
-                            .action(expressionValues.get(action))
-                            .fail(!success)
-                            .createTime(new Date())
-                            .build();
-
-                    //如果 action 为空，不记录日志
-                    if (StringUtils.isEmpty(logRecord.getAction())) {
-                        continue;
+                //先判断 condition，不满足的时候其他模板和函数都不用解析
+                LogRecordTemplate conditionTemplate = operationPlan.getConditionTemplate();
+                if (conditionTemplate != null && !evaluateCondition(conditionTemplate, invocationContext, functionNameAndReturnMap)) {
+                    continue;
+                }
+                LogRecordOps operation = operationPlan.getOperation();
+                String action = operationPlan.getAction(success);
+                if (operationPlan.isOperatorFromService() && operatorIdFromService == null) {
+                    operatorIdFromService = Strings.nullToEmpty(operatorGetService.getUser().getOperatorId());
+                }
+
+                Map<String, String> expressionValues = processTemplate(spElTemplates, invocationContext, functionNameAndReturnMap);
+                LogRecord logRecord = LogRecord.builder()
+                        .tenant(tenantId)
+                        .type(expressionValues.get(operation.getType()))
+                        .bizNo(expressionValues.get(operation.getBizNo()))
+                        .operator(getRealOperatorId(operationPlan, operatorIdFromService, expressionValues))
+                        .subType(expressionValues.get(operation.getSubType()))
+                        .extra(expressionValues.get(operation.getExtra()))
+                        .codeVariable(getCodeVariable(invocationContext.getMethod()))
+                        .action(expressionValues.get(action))
+                        .fail(!success)
+                        .createTime(new Date())
+                        .build();
+
+                //如果 action 为空，不记录日志
+                if (StringUtils.isEmpty(logRecord.getAction())) {
+                    continue;
+                }
+                //save log 需要新开事务，失败日志不能因为事务回滚而丢失
+                Preconditions.checkNotNull(bizLogService, "bizLogService not init!!");
+                long persistStart = monitorEnabled ? System.nanoTime() : 0L;
+                try {
+                    if (logRecordDispatcher != null) {
+                        logRecordDispatcher.dispatch(logRecord);
+                    } else {
+                        bizLogService.record(logRecord);
+                    }
+                } finally {
+                    if (monitorEnabled) {
+                        persistNanos += System.nanoTime() - persistStart;
                     }
-                    //save log 需要新开事务，失败日志不能因为事务回滚而丢失
-                    Preconditions.checkNotNull(bizLogService, "bizLogService not init!!");
-                    bizLogService.record(logRecord);
                 }
             } catch (Exception t) {
                 log.error("log record execute exception", t);
             }
         }
+        return persistNanos;
     }
 
     private Map<CodeVariableType, Object> getCodeVariable(Method method) {
@@ -162,44 +361,30 @@ public class LogRecordInterceptor extends LogRecordValueParser implements Initia
         return map;
     }
 
-    private List<String> getSpElTemplates(LogRecordOps operation, String action) {
-        List<String> spElTemplates = Lists.newArrayList(operation.getType(), operation.getBizNo(), operation.getSubType(), action, operation.getExtra());
-        if (!StringUtils.isEmpty(operation.getCondition())) {
-            spElTemplates.add(operation.getCondition());
+    private String getRealOperatorId(LogRecordMethodPlan.OperationPlan operationPlan, String operatorIdFromService,
+                                     Map<String, String> expressionValues) {
+        if (!operationPlan.isOperatorFromService()) {
+            return expressionValues.get(operationPlan.getOperation().getOperatorId());
         }
-        return spElTemplates;
-    }
-
-    private boolean logConditionPassed(String condition, Map<String, String> expressionValues) {
-        return StringUtils.isEmpty(condition) || StringUtils.endsWithIgnoreCase(expressionValues.get(condition), "true");
-    }
-
-    private String getRealOperatorId(LogRecordOps operation, String operatorIdFromService, Map<String, String> expressionValues) {
-        return !StringUtils.isEmpty(operatorIdFromService) ? operatorIdFromService : expressionValues.get(operation.getOperatorId());
-    }
-
-    private String getOperatorIdFromServiceAndPutTemplate(LogRecordOps operation, List<String> spElTemplates) {
-
-        String realOperatorId = "";
-        if (StringUtils.isEmpty(operation.getOperatorId())) {
-            realOperatorId = operatorGetService.getUser().getOperatorId();
-            if (StringUtils.isEmpty(realOperatorId)) {
-                throw new IllegalArgumentException("[LogRecord] operator is null");
-            }
-        } else {
-            spElTemplates.add(operation.getOperatorId());
+        if (StringUtils.isEmpty(operatorIdFromService)) {
+            throw new IllegalArgumentException("[LogRecord] operator is null");
         }
-        return realOperatorId;
+        return operatorIdFromService;
     }
 
-    private String getActionContent(boolean success, LogRecordOps operation) {
-        String action = "";
-        if (success) {
-            action = operation.getSuccessLogTemplate();
-        } else {
-            action = operation.getFailLogTemplate();
+    /**
+     * 有注解没有配置 operator 的时候从 IOperatorGetService 取操作人。一定不返回 null：取不到的时候返回空字符串，
+     * 回调里不会在其他线程重新取（线程池的线程里可能是其他请求的用户），在记录日志的时候报错
+     */
+    private String getOperatorIdFromService(LogRecordMethodPlan plan) {
+        try {
+            if (plan.isOperatorFromService()) {
+                return Strings.nullToEmpty(operatorGetService.getUser().getOperatorId());
+            }
+        } catch (Exception e) {
+            log.error("log record get operator exception", e);
         }
-        return action;
+        return "";
     }
 
     private Class<?> getTargetClass(Object target) {
@@ -223,17 +408,82 @@ public class LogRecordInterceptor extends LogRecordValueParser implements Initia
         this.logRecordPerformanceMonitor = logRecordPerformanceMonitor;
     }
 
+    public void setLogRecordDispatcher(AsyncLogRecordDispatcher logRecordDispatcher) {
+        this.logRecordDispatcher = logRecordDispatcher;
+    }
+
+    public void setDeferredExecutor(Executor deferredExecutor) {
+        this.deferredExecutor = deferredExecutor;
+    }
+
+    public void setDeferred(LogRecordProperties.Deferred deferredConfig) {
+        this.deferredConfig = deferredConfig;
+    }
+
+    public void setLogRecordSampler(LogRecordSampler logRecordSampler) {
+        this.logRecordSampler = logRecordSampler;
+    }
+
+    public void setOperatorCache(LogRecordProperties.OperatorCache operatorCache) {
+        this.operatorCache = operatorCache;
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
         bizLogService = beanFactory.getBean(ILogRecordService.class);
-        operatorGetService = beanFactory.getBean(IOperatorGetService.class);
+        if (operatorGetService == null) {
+            operatorGetService = beanFactory.getBean(IOperatorGetService.class);
+        }
+        if (operatorCache != null && operatorCache.isEnabled() && !(operatorGetService instanceof CachingOperatorGetService)) {
+            operatorGetService = new CachingOperatorGetService(operatorGetService, operatorCache.getTtl(), operatorCache.getMaximumSize());
+        }
+        if (logRecordDispatcher == null) {
+            //没有开启异步写入的时候为 null，日志在业务线程中同步写入
+            logRecordDispatcher = beanFactory.getBeanProvider(AsyncLogRecordDispatcher.class).getIfAvailable();
+        }
+        if (logRecordSampler == null) {
+            logRecordSampler = beanFactory.getBeanProvider(LogRecordSampler.class).getIfAvailable();
+        }
+        if (logRecordPerformanceMonitor == null) {
+            logRecordPerformanceMonitor = beanFactory.getBeanProvider(ILogRecordPerformanceMonitor.class).getIfAvailable();
+        }
+        if (deferredExecutor == null) {
+            //解析模板、自定义函数和保存日志都可能阻塞，不能在完成返回值的线程（比如 Netty 的 event loop）里执行
+            ownedDeferredExecutor = createDeferredExecutor(deferredConfig != null ? deferredConfig : new LogRecordProperties.Deferred());
+            deferredExecutor = ownedDeferredExecutor;
+        }
         Preconditions.checkNotNull(bizLogService, "bizLogService not null");
     }
 
+    /**
+     * 有界的线程池，队列满了之后直接拒绝，不回退到调用线程
+     */
+    private ThreadPoolExecutor createDeferredExecutor(LogRecordProperties.Deferred config) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("log-record-deferred-");
+        threadFactory.setDaemon(true);
+        int threads = Math.max(1, config.getThreads());
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, config.getQueueCapacity())), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    public void destroy() {
+        shutdownBeforeFunctionExecutor();
+        if (ownedDeferredExecutor != null) {
+            ownedDeferredExecutor.shutdown();
+        }
+    }
+
     public void setOperatorGetService(IOperatorGetService operatorGetService) {
         this.operatorGetService = operatorGetService;
     }
 
+    public IOperatorGetService getOperatorGetService() {
+        return operatorGetService;
+    }
+
     @Data
     @AllArgsConstructor
     @NoArgsConstructor
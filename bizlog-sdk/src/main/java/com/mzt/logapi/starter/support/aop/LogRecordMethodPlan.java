@@ -0,0 +1,218 @@
+package com.mzt.logapi.starter.support.aop;
+
+import com.mzt.logapi.beans.LogRecordOps;
+import com.mzt.logapi.starter.support.parse.LogRecordExpressionEvaluator;
+import com.mzt.logapi.starter.support.parse.LogRecordTemplate;
+import com.mzt.logapi.starter.support.sampling.LogRecordSampler;
+import lombok.Getter;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * 一个方法的日志执行计划，第一次拦截的时候生成，之后只读：
+ * 注解上预编译好的模板、执行前需要调用函数的模板、每个注解成功和失败时要渲染的模板、操作人是否从 IOperatorGetService 获取，
+ * 拦截的时候只做这个方法需要的工作
+ */
+@Getter
+final class LogRecordMethodPlan {
+
+    static final LogRecordMethodPlan EMPTY = new LogRecordMethodPlan(Collections.emptyList(), Collections.emptyList(),
+            false, false, 0);
+
+    private final List<OperationPlan> operationPlans;
+    /**
+     * 包含执行前函数的模板，为空的时候跳过执行前的阶段
+     */
+    private final List<LogRecordTemplate> beforeExecuteTemplates;
+    /**
+     * 是否有注解没有配置 operator，需要从 IOperatorGetService 获取操作人
+     */
+    private final boolean operatorFromService;
+    /**
+     * 是否有注解匹配了采样规则
+     */
+    private final boolean sampled;
+    private final int templateCount;
+
+    private LogRecordMethodPlan(List<OperationPlan> operationPlans, List<LogRecordTemplate> beforeExecuteTemplates,
+                                boolean operatorFromService, boolean sampled, int templateCount) {
+        this.operationPlans = operationPlans;
+        this.beforeExecuteTemplates = beforeExecuteTemplates;
+        this.operatorFromService = operatorFromService;
+        this.sampled = sampled;
+        this.templateCount = templateCount;
+    }
+
+    boolean isEmpty() {
+        return operationPlans.isEmpty();
+    }
+
+    boolean hasBeforeExecute() {
+        return !beforeExecuteTemplates.isEmpty();
+    }
+
+    /**
+     * 去掉被采样丢弃的注解之后执行前需要解析的模板；保留失败日志的时候，配置了失败模板的注解失败后还要记录，执行前的函数不能去掉
+     *
+     * @param dropped      和 operationPlans 一一对应
+     * @param keepFailures 被丢弃的注解在方法失败的时候是否仍然记录
+     */
+    List<LogRecordTemplate> getBeforeExecuteTemplates(boolean[] dropped, boolean keepFailures) {
+        List<LogRecordTemplate> templates = new ArrayList<>();
+        for (int i = 0; i < operationPlans.size(); i++) {
+            if (!dropped[i] || keepFailures && operationPlans.get(i).getFailTemplates() != null) {
+                templates.addAll(operationPlans.get(i).getBeforeExecuteTemplates());
+            }
+        }
+        return templates;
+    }
+
+    /**
+     * @param expressionEvaluator 解析模板中的 SpEL 表达式
+     * @param beforeFunction      判断函数是否在方法执行前调用
+     * @param sampler             没有开启采样的时候为 null
+     */
+    static LogRecordMethodPlan create(Collection<LogRecordOps> operations, LogRecordExpressionEvaluator expressionEvaluator,
+                                      Predicate<String> beforeFunction, LogRecordSampler sampler) {
+        if (operations.isEmpty()) {
+            return EMPTY;
+        }
+        List<OperationPlan> operationPlans = new ArrayList<>(operations.size());
+        List<LogRecordTemplate> beforeExecuteTemplates = new ArrayList<>();
+        boolean operatorFromService = false;
+        boolean sampled = false;
+        int templateCount = 0;
+        for (LogRecordOps cachedOperation : operations) {
+            //LogRecordOperationSource 缓存的注解解析结果是共享的可变对象，计划里保存一份副本，之后的修改不影响计划
+            LogRecordOps operation = copyOf(cachedOperation);
+            Map<String, LogRecordTemplate> templates = parseTemplates(operation, expressionEvaluator);
+            OperationPlan operationPlan = new OperationPlan(operation, templates, beforeFunction,
+                    sampler == null ? null : sampler.ruleOf(operation.getType(), operation.getSubType()));
+            operationPlans.add(operationPlan);
+            beforeExecuteTemplates.addAll(operationPlan.getBeforeExecuteTemplates());
+            operatorFromService |= operationPlan.isOperatorFromService();
+            sampled |= operationPlan.getSamplingRule() != null;
+            templateCount += templates.size();
+        }
+        return new LogRecordMethodPlan(Collections.unmodifiableList(operationPlans),
+                Collections.unmodifiableList(beforeExecuteTemplates), operatorFromService, sampled, templateCount);
+    }
+
+    private static LogRecordOps copyOf(LogRecordOps operation) {
+        return LogRecordOps.builder()
+                .successLogTemplate(operation.getSuccessLogTemplate())
+                .failLogTemplate(operation.getFailLogTemplate())
+                .operatorId(operation.getOperatorId())
+                .type(operation.getType())
+                .bizNo(operation.getBizNo())
+                .subType(operation.getSubType())
+                .extra(operation.getExtra())
+                .condition(operation.getCondition())
+                .build();
+    }
+
+    /**
+     * 注解上的模板在这里一次性拆分、解析 SpEL，拦截的时候只需要渲染，key 是注解上的原始模板
+     */
+    private static Map<String, LogRecordTemplate> parseTemplates(LogRecordOps operation, LogRecordExpressionEvaluator expressionEvaluator) {
+        Map<String, LogRecordTemplate> templates = new HashMap<>(16);
+        for (String template : new String[]{operation.getSuccessLogTemplate(), operation.getFailLogTemplate(),
+                operation.getType(), operation.getBizNo(), operation.getOperatorId(), operation.getSubType(),
+                operation.getExtra(), operation.getCondition()}) {
+            if (template != null && !templates.containsKey(template)) {
+                templates.put(template, LogRecordTemplate.parse(template, expressionEvaluator));
+            }
+        }
+        return templates;
+    }
+
+    private static boolean hasBeforeFunction(LogRecordTemplate template, Predicate<String> beforeFunction) {
+        if (template == null || template.isConstant()) {
+            return false;
+        }
+        for (LogRecordTemplate.Segment segment : template.getSegments()) {
+            if (!segment.isLiteral() && !segment.isDiff() && !segment.isReferencesResult()
+                    && beforeFunction.test(segment.getFunctionName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 一条日志需要渲染的模板：type、bizNo、subType、日志内容、extra，以及配置了的 operator；
+     * condition 在这些模板之前单独求值，执行前的函数也会用到 condition
+     */
+    private static List<LogRecordTemplate> templates(LogRecordOps operation, Map<String, LogRecordTemplate> parsedTemplates,
+                                                     String action, boolean withOperator) {
+        List<LogRecordTemplate> templates = new ArrayList<>(7);
+        templates.add(parsedTemplates.get(operation.getType()));
+        templates.add(parsedTemplates.get(operation.getBizNo()));
+        templates.add(parsedTemplates.get(operation.getSubType()));
+        templates.add(parsedTemplates.get(action));
+        templates.add(parsedTemplates.get(operation.getExtra()));
+        if (!withOperator && !StringUtils.isEmpty(operation.getCondition())) {
+            templates.add(parsedTemplates.get(operation.getCondition()));
+        }
+        if (withOperator && !StringUtils.isEmpty(operation.getOperatorId())) {
+            templates.add(parsedTemplates.get(operation.getOperatorId()));
+        }
+        return Collections.unmodifiableList(templates);
+    }
+
+    @Getter
+    static final class OperationPlan {
+        private final LogRecordOps operation;
+        /**
+         * 成功、失败时需要渲染的模板，没有配置对应的日志内容的时候为 null
+         */
+        private final List<LogRecordTemplate> successTemplates;
+        private final List<LogRecordTemplate> failTemplates;
+        /**
+         * 没有配置 condition 的时候为 null
+         */
+        private final LogRecordTemplate conditionTemplate;
+        private final List<LogRecordTemplate> beforeExecuteTemplates;
+        private final boolean operatorFromService;
+        /**
+         * 匹配的采样规则，没有的时候为 null
+         */
+        private final LogRecordSampler.Rule samplingRule;
+
+        private OperationPlan(LogRecordOps operation, Map<String, LogRecordTemplate> parsedTemplates,
+                              Predicate<String> beforeFunction, LogRecordSampler.Rule samplingRule) {
+            this.operation = operation;
+            this.successTemplates = StringUtils.isEmpty(operation.getSuccessLogTemplate()) ? null
+                    : templates(operation, parsedTemplates, operation.getSuccessLogTemplate(), true);
+            this.failTemplates = StringUtils.isEmpty(operation.getFailLogTemplate()) ? null
+                    : templates(operation, parsedTemplates, operation.getFailLogTemplate(), true);
+            this.conditionTemplate = StringUtils.isEmpty(operation.getCondition()) ? null
+                    : parsedTemplates.get(operation.getCondition());
+            this.operatorFromService = StringUtils.isEmpty(operation.getOperatorId());
+            this.samplingRule = samplingRule;
+            //执行之前的函数，失败模版不解析
+            List<LogRecordTemplate> beforeExecuteTemplates = new ArrayList<>();
+            for (LogRecordTemplate template : templates(operation, parsedTemplates, operation.getSuccessLogTemplate(), false)) {
+                if (hasBeforeFunction(template, beforeFunction)) {
+                    beforeExecuteTemplates.add(template);
+                }
+            }
+            this.beforeExecuteTemplates = Collections.unmodifiableList(beforeExecuteTemplates);
+        }
+
+        String getAction(boolean success) {
+            return success ? operation.getSuccessLogTemplate() : operation.getFailLogTemplate();
+        }
+
+        List<LogRecordTemplate> getTemplates(boolean success) {
+            return success ? successTemplates : failTemplates;
+        }
+    }
+}
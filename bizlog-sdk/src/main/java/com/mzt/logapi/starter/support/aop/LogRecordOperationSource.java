@@ -3,6 +3,7 @@ package com.mzt.logapi.starter.support.aop;
 import com.mzt.logapi.beans.LogRecordOps;
 import com.mzt.logapi.starter.annotation.LogRecord;
 import org.springframework.core.BridgeMethodResolver;
+import org.springframework.core.MethodClassKey;
 import org.springframework.core.annotation.AnnotatedElementUtils;
 import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
@@ -12,6 +13,9 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * DATE 6:03 PM
@@ -20,6 +24,34 @@ import java.util.Collection;
  */
 public class LogRecordOperationSource {
 
+    /**
+     * 没有 @LogRecord 注解的方法也缓存起来，避免每次调用都重新解析
+     */
+    private static final Collection<LogRecordOps> NULL_LOG_RECORD_OPERATIONS = Collections.emptyList();
+
+    private final Map<Object, Collection<LogRecordOps>> attributeCache = new ConcurrentHashMap<>(1024);
+
+    /**
+     * 获取方法上的日志注解，解析结果按 (method, targetClass) 缓存，Pointcut 匹配和每次拦截都走这里
+     *
+     * @param method      the method
+     * @param targetClass the target class
+     * @return 日志注解的解析结果，没有注解的时候返回空集合
+     */
+    public Collection<LogRecordOps> getLogRecordOperations(Method method, Class<?> targetClass) {
+        if (method.getDeclaringClass() == Object.class) {
+            return NULL_LOG_RECORD_OPERATIONS;
+        }
+        Object cacheKey = new MethodClassKey(method, targetClass);
+        Collection<LogRecordOps> cached = this.attributeCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        Collection<LogRecordOps> operations = computeLogRecordOperations(method, targetClass);
+        operations = operations == null ? NULL_LOG_RECORD_OPERATIONS : Collections.unmodifiableCollection(operations);
+        this.attributeCache.put(cacheKey, operations);
+        return operations;
+    }
 
     public Collection<LogRecordOps> computeLogRecordOperations(Method method, Class<?> targetClass) {
         // Don't allow no-public methods as required.
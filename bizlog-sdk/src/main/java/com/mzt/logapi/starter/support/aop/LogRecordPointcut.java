@@ -18,7 +18,7 @@ public class LogRecordPointcut extends StaticMethodMatcherPointcut implements Se
 
     @Override
     public boolean matches(Method method, Class<?> targetClass) {
-        return !CollectionUtils.isEmpty(logRecordOperationSource.computeLogRecordOperations(method, targetClass));
+        return !CollectionUtils.isEmpty(logRecordOperationSource.getLogRecordOperations(method, targetClass));
     }
 
     void setLogRecordOperationSource(LogRecordOperationSource logRecordOperationSource) {
@@ -0,0 +1,36 @@
+package com.mzt.logapi.starter.support.aop;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.BiConsumer;
+
+/**
+ * 返回 Mono、Flux 的方法在完成之后再记录日志，只有 classpath 中有 reactor-core 的时候才会加载这个类
+ */
+final class ReactiveResultSupport {
+
+    private ReactiveResultSupport() {
+    }
+
+    static boolean isReactive(Object ret) {
+        return ret instanceof Mono || ret instanceof Flux;
+    }
+
+    /**
+     * Mono 完成的时候 _ret 是发出的元素；Flux 的元素不缓存，_ret 为 null。每次订阅都会记录一次日志，取消订阅不记录
+     *
+     * @param onComplete 参数是结果和异常，不能阻塞
+     * @return 完成的时候回调 onComplete 的 Mono、Flux
+     */
+    static Object defer(Object ret, BiConsumer<Object, Throwable> onComplete) {
+        if (ret instanceof Mono) {
+            return ((Mono<?>) ret)
+                    .doOnSuccess(value -> onComplete.accept(value, null))
+                    .doOnError(throwable -> onComplete.accept(null, throwable));
+        }
+        return ((Flux<?>) ret)
+                .doOnComplete(() -> onComplete.accept(null, null))
+                .doOnError(throwable -> onComplete.accept(null, throwable));
+    }
+}
@@ -0,0 +1,141 @@
+package com.mzt.logapi.starter.support.async;
+
+import com.mzt.logapi.beans.LogRecord;
+import com.mzt.logapi.service.ILogRecordService;
+import com.mzt.logapi.starter.configuration.LogRecordProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 日志异步批量写入：业务线程只把日志放入有界队列，后台线程攒批后调用 {@link ILogRecordService#recordBatch}，
+ * 业务方法的耗时里不再包含日志存储的耗时
+ */
+@Slf4j
+public class AsyncLogRecordDispatcher implements DisposableBean {
+
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    private final ILogRecordService logRecordService;
+    private final BlockingQueue<LogRecord> queue;
+    private final int batchSize;
+    private final LogRecordRejectPolicy rejectPolicy;
+    private final long shutdownTimeoutMillis;
+    private final ExecutorService workers;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile boolean running = true;
+
+    public AsyncLogRecordDispatcher(ILogRecordService logRecordService, LogRecordProperties.Async config) {
+        this.logRecordService = logRecordService;
+        this.queue = new ArrayBlockingQueue<>(config.getQueueCapacity());
+        this.batchSize = Math.max(1, config.getBatchSize());
+        this.rejectPolicy = config.getRejectPolicy();
+        this.shutdownTimeoutMillis = config.getShutdownTimeout().toMillis();
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("log-record-dispatcher-");
+        threadFactory.setDaemon(true);
+        int workerCount = Math.max(1, config.getWorkers());
+        this.workers = Executors.newFixedThreadPool(workerCount, threadFactory);
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::drainLoop);
+        }
+    }
+
+    public void dispatch(LogRecord logRecord) {
+        if (!running) {
+            //应用关闭中，直接同步写入
+            flush(Collections.singletonList(logRecord));
+            return;
+        }
+        switch (rejectPolicy) {
+            case BLOCK:
+                try {
+                    queue.put(logRecord);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    flush(Collections.singletonList(logRecord));
+                }
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(logRecord)) {
+                    if (queue.poll() != null) {
+                        droppedCount.incrementAndGet();
+                    }
+                }
+                break;
+            case CALLER_RUNS:
+            default:
+                if (!queue.offer(logRecord)) {
+                    flush(Collections.singletonList(logRecord));
+                }
+                break;
+        }
+    }
+
+    private void drainLoop() {
+        while (running || !queue.isEmpty()) {
+            LogRecord first;
+            try {
+                first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (first == null) {
+                continue;
+            }
+            List<LogRecord> batch = new ArrayList<>(batchSize);
+            batch.add(first);
+            queue.drainTo(batch, batchSize - 1);
+            flush(batch);
+        }
+    }
+
+    private void flush(List<LogRecord> batch) {
+        try {
+            logRecordService.recordBatch(batch);
+        } catch (Exception e) {
+            //记录日志错误不要影响业务
+            log.error("log record batch flush exception, size={}", batch.size(), e);
+        }
+    }
+
+    /**
+     * @return 因为队列满了被丢弃的日志条数，只有 DROP_OLDEST 策略会丢弃
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return 队列中等待写入的日志条数
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        running = false;
+        workers.shutdown();
+        if (!workers.awaitTermination(shutdownTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            log.warn("log record dispatcher shutdown timeout, pending={}", queue.size());
+            workers.shutdownNow();
+        }
+        //后台线程超时退出后，队列里剩下的日志在当前线程写完
+        List<LogRecord> rest = new ArrayList<>(batchSize);
+        while (queue.drainTo(rest, batchSize) > 0) {
+            flush(rest);
+            rest = new ArrayList<>(batchSize);
+        }
+    }
+}
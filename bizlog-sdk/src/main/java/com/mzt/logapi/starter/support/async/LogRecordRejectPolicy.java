@@ -0,0 +1,20 @@
+package com.mzt.logapi.starter.support.async;
+
+/**
+ * 异步写入队列满了之后的处理策略
+ */
+public enum LogRecordRejectPolicy {
+    /**
+     * 阻塞业务线程，直到队列有空位
+     */
+    BLOCK,
+    /**
+     * 丢弃队列中最早的日志，放入当前日志
+     */
+    DROP_OLDEST,
+    /**
+     * 在业务线程中直接同步写入
+     */
+    CALLER_RUNS,
+    ;
+}
@@ -5,6 +5,7 @@ import lombok.AllArgsConstructor;
 import org.apache.logging.log4j.util.Strings;
 import org.springframework.util.StringUtils;
 
+import java.util.Collection;
 import java.util.Map;
 
 /**
@@ -50,4 +51,12 @@ public class LogFunctionParser {
     public boolean beforeFunction(String functionName) {
         return functionService.beforeFunction(functionName);
     }
+
+    public boolean batchFunction(String functionName) {
+        return functionService.batchFunction(functionName);
+    }
+
+    public Map<Object, String> batchApply(String functionName, Collection<?> values) {
+        return functionService.batchApply(functionName, values);
+    }
 }
@@ -5,25 +5,45 @@ import org.springframework.context.expression.MethodBasedEvaluationContext;
 import org.springframework.core.ParameterNameDiscoverer;
 
 import java.lang.reflect.Method;
-import java.util.Map;
 
 /**
  * DATE 4:12 PM
+ * LogRecordContext 中的变量在用到的时候再去取，不在创建的时候全部复制一遍，
+ * 所以同一次方法调用的执行前和执行后可以共用一个 context
  *
  * @author mzt.
  */
 public class LogRecordEvaluationContext extends MethodBasedEvaluationContext {
 
+    private static final String RET_VARIABLE = "_ret";
+    private static final String ERROR_MSG_VARIABLE = "_errorMsg";
+
+    private Object ret;
+    private String errorMsg;
+
     public LogRecordEvaluationContext(Object rootObject, Method method, Object[] arguments,
                                       ParameterNameDiscoverer parameterNameDiscoverer, Object ret, String errorMsg) {
         super(rootObject, method, arguments, parameterNameDiscoverer);
-        Map<String, Object> variables = LogRecordContext.getVariables();
-        if (variables != null && variables.size() > 0) {
-            for (Map.Entry<String, Object> entry : variables.entrySet()) {
-                setVariable(entry.getKey(), entry.getValue());
-            }
+        setResult(ret, errorMsg);
+    }
+
+    /**
+     * 方法执行完之后设置 _ret 和 _errorMsg
+     */
+    public void setResult(Object ret, String errorMsg) {
+        this.ret = ret;
+        this.errorMsg = errorMsg;
+    }
+
+    @Override
+    public Object lookupVariable(String name) {
+        if (RET_VARIABLE.equals(name)) {
+            return ret;
+        }
+        if (ERROR_MSG_VARIABLE.equals(name)) {
+            return errorMsg;
         }
-        setVariable("_ret", ret);
-        setVariable("_errorMsg", errorMsg);
+        Object variable = LogRecordContext.getVariable(name);
+        return variable != null ? variable : super.lookupVariable(name);
     }
-}
\ No newline at end of file
+}
@@ -1,31 +1,145 @@
 package com.mzt.logapi.starter.support.parse;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.context.expression.AnnotatedElementKey;
 import org.springframework.context.expression.BeanFactoryResolver;
 import org.springframework.context.expression.CachedExpressionEvaluator;
+import org.springframework.expression.BeanResolver;
 import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelEvaluationException;
+import org.springframework.expression.spel.SpelMessage;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
 
 import java.lang.reflect.Method;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * DATE 4:38 PM
+ * <p>
+ * 支持 SpEL 编译模式：IMMEDIATE 在表达式第一次解释执行之后就编译成字节码，MIXED 解释执行
+ * {@value #MIXED_COMPILE_THRESHOLD} 次之后再编译。编译的时机由这里控制，不交给 SpelExpression，
+ * 编译失败或者编译后的代码执行失败（比如变量的实际类型变了）的表达式会一直解释执行，不会抛出异常
  *
  * @author mzt.
  */
+@Slf4j
 public class LogRecordExpressionEvaluator extends CachedExpressionEvaluator {
 
+    private static final int MIXED_COMPILE_THRESHOLD = 100;
+    private static final int COMPILE_DECIDED = -1;
+
     private final Map<AnnotatedElementKey, Method> targetMethodCache = new ConcurrentHashMap<>(64);
     private final Map<ExpressionKey, Expression> expressionCache = new ConcurrentHashMap<>(64);
+    /**
+     * 表达式已经解释执行的次数，决定编译之后置为 COMPILE_DECIDED
+     */
+    private final Map<Expression, AtomicInteger> interpretedCounts = new ConcurrentHashMap<>(64);
+
+    private final SpelCompilerMode compilerMode;
+    private final LongAdder compiledCount = new LongAdder();
+    private final LongAdder notCompilableCount = new LongAdder();
+    private final LongAdder fallbackCount = new LongAdder();
+
+    public LogRecordExpressionEvaluator() {
+        this(SpelCompilerMode.OFF);
+    }
+
+    public LogRecordExpressionEvaluator(SpelCompilerMode compilerMode) {
+        // parser 本身不开启编译，避免 IMMEDIATE 模式下编译后的代码执行失败直接抛出异常
+        super(new SpelExpressionParser(new SpelParserConfiguration(SpelCompilerMode.OFF,
+                LogRecordExpressionEvaluator.class.getClassLoader())));
+        this.compilerMode = compilerMode == null ? SpelCompilerMode.OFF : compilerMode;
+    }
 
     public Object parseExpression(String conditionExpression, AnnotatedElementKey methodKey, EvaluationContext evalContext) {
         return getExpression(this.expressionCache, methodKey, conditionExpression).getValue(evalContext, Object.class);
     }
 
+    /**
+     * 解析 SpEL 表达式，模板预编译的时候调用，解析结果保存在 {@link LogRecordTemplate} 中
+     *
+     * @param expression SpEL 表达式
+     * @return 解析好的表达式
+     */
+    public Expression createExpression(String expression) {
+        return getParser().parseExpression(expression);
+    }
+
+    public Object evaluate(Expression expression, EvaluationContext evalContext) {
+        if (compilerMode == SpelCompilerMode.OFF || !(expression instanceof SpelExpression)) {
+            return expression.getValue(evalContext, Object.class);
+        }
+        SpelExpression spelExpression = (SpelExpression) expression;
+        Object value;
+        try {
+            value = spelExpression.getValue(evalContext, Object.class);
+        } catch (SpelEvaluationException e) {
+            if (e.getMessageCode() != SpelMessage.EXCEPTION_RUNNING_COMPILED_EXPRESSION) {
+                throw e;
+            }
+            spelExpression.revertToInterpreted();
+            fallbackCount.increment();
+            log.warn("compiled expression [{}] failed, fall back to interpreted mode", spelExpression.getExpressionString(), e);
+            return spelExpression.getValue(evalContext, Object.class);
+        }
+        AtomicInteger count = interpretedCounts.computeIfAbsent(expression, key -> new AtomicInteger());
+        int interpreted = count.get();
+        if (interpreted != COMPILE_DECIDED && interpreted + 1 >= compileThreshold()
+                && count.compareAndSet(interpreted, COMPILE_DECIDED)) {
+            compile(spelExpression);
+        } else if (interpreted != COMPILE_DECIDED) {
+            count.compareAndSet(interpreted, interpreted + 1);
+        }
+        return value;
+    }
+
+    private int compileThreshold() {
+        return compilerMode == SpelCompilerMode.IMMEDIATE ? 1 : MIXED_COMPILE_THRESHOLD;
+    }
+
+    private void compile(SpelExpression spelExpression) {
+        if (spelExpression.compileExpression()) {
+            compiledCount.increment();
+        } else {
+            notCompilableCount.increment();
+            log.debug("expression [{}] is not compilable, keep interpreted mode", spelExpression.getExpressionString());
+        }
+    }
+
+    public SpelCompilerMode getCompilerMode() {
+        return compilerMode;
+    }
+
+    /**
+     * @return 编译成功的表达式个数
+     */
+    public long getCompiledCount() {
+        return compiledCount.sum();
+    }
+
+    /**
+     * @return 不支持编译，只能解释执行的表达式个数
+     */
+    public long getNotCompilableCount() {
+        return notCompilableCount.sum();
+    }
+
+    /**
+     * @return 编译后执行失败，退回解释执行的次数
+     */
+    public long getFallbackCount() {
+        return fallbackCount.sum();
+    }
+
     /**
      * Create an {@link EvaluationContext}.
      *
@@ -39,11 +153,28 @@ public class LogRecordExpressionEvaluator extends CachedExpressionEvaluator {
      */
     public EvaluationContext createEvaluationContext(Method method, Object[] args, Class<?> targetClass,
                                                      Object result, String errorMsg, BeanFactory beanFactory) {
+        return createEvaluationContext(method, args, targetClass, result, errorMsg,
+                beanFactory != null ? new BeanFactoryResolver(beanFactory) : null);
+    }
+
+    /**
+     * Create an {@link LogRecordEvaluationContext} with a shared {@link BeanResolver}.
+     *
+     * @param method       the method
+     * @param args         the method arguments
+     * @param targetClass  the target class
+     * @param result       the return value (can be {@code null}) or
+     * @param errorMsg     errorMsg
+     * @param beanResolver bean resolver (can be {@code null})
+     * @return the evaluation context
+     */
+    public LogRecordEvaluationContext createEvaluationContext(Method method, Object[] args, Class<?> targetClass,
+                                                             Object result, String errorMsg, BeanResolver beanResolver) {
         Method targetMethod = getTargetMethod(targetClass, method);
         LogRecordEvaluationContext evaluationContext = new LogRecordEvaluationContext(
                 null, targetMethod, args, getParameterNameDiscoverer(), result, errorMsg);
-        if (beanFactory != null) {
-            evaluationContext.setBeanResolver(new BeanFactoryResolver(beanFactory));
+        if (beanResolver != null) {
+            evaluationContext.setBeanResolver(beanResolver);
         }
         return evaluationContext;
     }
@@ -0,0 +1,46 @@
+package com.mzt.logapi.starter.support.parse;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 把 SpEL 编译的计数注册到 Micrometer，指标名是 log.record.spel.compile，tag result 是 compiled、not_compilable、fallback，
+ * tag mode 是配置的编译模式
+ */
+public class LogRecordExpressionMetricsBinder implements SmartInitializingSingleton {
+
+    private static final String METRIC_NAME = "log.record.spel.compile";
+
+    private final ObjectProvider<LogRecordExpressionEvaluator> evaluatorProvider;
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    public LogRecordExpressionMetricsBinder(ObjectProvider<LogRecordExpressionEvaluator> evaluatorProvider,
+                                            ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.evaluatorProvider = evaluatorProvider;
+        this.meterRegistryProvider = meterRegistryProvider;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        LogRecordExpressionEvaluator evaluator = evaluatorProvider.getIfAvailable();
+        MeterRegistry meterRegistry = meterRegistryProvider.getIfAvailable();
+        if (evaluator == null || meterRegistry == null) {
+            return;
+        }
+        register(meterRegistry, evaluator, "compiled", LogRecordExpressionEvaluator::getCompiledCount);
+        register(meterRegistry, evaluator, "not_compilable", LogRecordExpressionEvaluator::getNotCompilableCount);
+        register(meterRegistry, evaluator, "fallback", LogRecordExpressionEvaluator::getFallbackCount);
+    }
+
+    private void register(MeterRegistry meterRegistry, LogRecordExpressionEvaluator evaluator, String result,
+                          ToDoubleFunction<LogRecordExpressionEvaluator> counter) {
+        FunctionCounter.builder(METRIC_NAME, evaluator, counter)
+                .tag("mode", evaluator.getCompilerMode().name())
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,71 @@
+package com.mzt.logapi.starter.support.parse;
+
+import lombok.Getter;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 一次方法调用的解析上下文，执行前和执行后的模板解析共用一个 EvaluationContext，
+ * EvaluationContext 在第一次用到的时候才创建
+ */
+@Getter
+public class LogRecordInvocationContext {
+
+    private final Method method;
+    private final Object[] args;
+    private final Class<?> targetClass;
+    private Object ret;
+    private String errorMsg;
+    private LogRecordEvaluationContext evaluationContext;
+    /**
+     * 方法执行后解析出来的占位符的值，key 是函数名+参数表达式
+     */
+    private Map<String, String> renderedValues;
+    /**
+     * 执行前等待超时的函数调用，方法执行后等待它们的结果，不再重新调用，key 是函数名+参数表达式
+     */
+    private Map<String, CompletableFuture<String>> lateBeforeFunctionValues;
+
+    public LogRecordInvocationContext(Method method, Object[] args, Class<?> targetClass) {
+        this.method = method;
+        this.args = args;
+        this.targetClass = targetClass;
+    }
+
+    /**
+     * 方法执行完之后调用，已经创建的 EvaluationContext 会加上 _ret 和 _errorMsg
+     */
+    public void setResult(Object ret, String errorMsg) {
+        this.ret = ret;
+        this.errorMsg = errorMsg;
+        if (evaluationContext != null) {
+            evaluationContext.setResult(ret, errorMsg);
+        }
+    }
+
+    Map<String, String> getRenderedValues() {
+        if (renderedValues == null) {
+            renderedValues = new HashMap<>();
+        }
+        return renderedValues;
+    }
+
+    Map<String, CompletableFuture<String>> getLateBeforeFunctionValues() {
+        return lateBeforeFunctionValues == null ? Collections.emptyMap() : lateBeforeFunctionValues;
+    }
+
+    void addLateBeforeFunctionValue(String functionCallInstanceKey, CompletableFuture<String> value) {
+        if (lateBeforeFunctionValues == null) {
+            lateBeforeFunctionValues = new HashMap<>();
+        }
+        lateBeforeFunctionValues.put(functionCallInstanceKey, value);
+    }
+
+    void setEvaluationContext(LogRecordEvaluationContext evaluationContext) {
+        this.evaluationContext = evaluationContext;
+    }
+}
@@ -0,0 +1,170 @@
+package com.mzt.logapi.starter.support.parse;
+
+import com.mzt.logapi.service.impl.DiffParseFunction;
+import lombok.Getter;
+import org.springframework.expression.Expression;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 预编译好的日志模板：启动的时候把模板拆成文本片段和 (函数名, 表达式) 片段，SpEL 表达式也只解析一次，
+ * 每次记录日志的时候只需要按顺序拼接
+ */
+@Getter
+public final class LogRecordTemplate {
+
+    private static final Pattern PATTERN = Pattern.compile("\\{\\s*(\\w*)\\s*\\{(.*?)}}");
+    private static final int PLACEHOLDER_LENGTH_HINT = 16;
+
+    /**
+     * 注解上配置的原始模板
+     */
+    private final String source;
+    private final List<Segment> segments;
+    /**
+     * 渲染时 StringBuilder 的初始容量
+     */
+    private final int estimatedLength;
+    /**
+     * 模板中没有任何占位符，不需要解析
+     */
+    private final boolean constant;
+
+    private LogRecordTemplate(String source, List<Segment> segments) {
+        this.source = source;
+        this.segments = Collections.unmodifiableList(segments);
+        int length = 0;
+        boolean constant = true;
+        for (Segment segment : segments) {
+            if (segment.isLiteral()) {
+                length += segment.getLiteral().length();
+            } else {
+                length += PLACEHOLDER_LENGTH_HINT;
+                constant = false;
+            }
+        }
+        this.estimatedLength = length;
+        this.constant = constant;
+    }
+
+    public static LogRecordTemplate parse(String template, LogRecordExpressionEvaluator expressionEvaluator) {
+        List<Segment> segments = new ArrayList<>();
+        if (template.contains("{")) {
+            Matcher matcher = PATTERN.matcher(template);
+            int last = 0;
+            while (matcher.find()) {
+                if (matcher.start() > last) {
+                    segments.add(Segment.literal(template.substring(last, matcher.start())));
+                }
+                segments.add(Segment.placeholder(matcher.group(1), matcher.group(2), expressionEvaluator));
+                last = matcher.end();
+            }
+            if (last < template.length()) {
+                segments.add(Segment.literal(template.substring(last)));
+            }
+        } else if (!template.isEmpty()) {
+            segments.add(Segment.literal(template));
+        }
+        return new LogRecordTemplate(template, segments);
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    /**
+     * 模板片段：文本，或者 {functionName{expression}} 占位符
+     */
+    @Getter
+    public static final class Segment {
+        private final String literal;
+        /**
+         * 占位符的函数名，{{#order.orderNo}} 这种没有函数的为空字符串
+         */
+        private final String functionName;
+        /**
+         * 占位符中解析前的表达式
+         */
+        private final String expressionString;
+        /**
+         * 表达式中用到了方法执行后才有的变量，方法执行前不能解析
+         */
+        private final boolean referencesResult;
+        private final Expression expression;
+        /**
+         * _DIFF 函数的参数，一个或者两个
+         */
+        private final Expression[] diffExpressions;
+        /**
+         * 表达式解析失败的异常，和之前一样在记录日志的时候抛出，不影响应用启动
+         */
+        private final RuntimeException parseException;
+
+        private Segment(String literal, String functionName, String expressionString,
+                        Expression expression,
+                        Expression[] diffExpressions, RuntimeException parseException) {
+            this.literal = literal;
+            this.functionName = functionName;
+            this.expressionString = expressionString;
+            this.referencesResult = expressionString != null
+                    && (expressionString.contains("#_ret") || expressionString.contains("#_errorMsg"));
+            this.expression = expression;
+            this.diffExpressions = diffExpressions;
+            this.parseException = parseException;
+        }
+
+        static Segment literal(String literal) {
+            return new Segment(literal, null, null, null, null, null);
+        }
+
+        static Segment placeholder(String functionName, String expressionString, LogRecordExpressionEvaluator expressionEvaluator) {
+            try {
+                if (DiffParseFunction.diffFunctionName.equals(functionName)) {
+                    String[] params = parseDiffFunction(expressionString);
+                    Expression[] diffExpressions = new Expression[params.length];
+                    for (int i = 0; i < params.length; i++) {
+                        diffExpressions[i] = expressionEvaluator.createExpression(params[i]);
+                    }
+                    return new Segment(null, functionName, expressionString, null, diffExpressions, null);
+                }
+                return new Segment(null, functionName, expressionString, expressionEvaluator.createExpression(expressionString), null, null);
+            } catch (RuntimeException e) {
+                return new Segment(null, functionName, expressionString, null, null, e);
+            }
+        }
+
+        private static String[] parseDiffFunction(String expression) {
+            if (expression.contains(LogRecordValueParser.COMMA) && LogRecordValueParser.strCount(expression, LogRecordValueParser.COMMA) == 1) {
+                return expression.split(LogRecordValueParser.COMMA);
+            }
+            return new String[]{expression};
+        }
+
+        public boolean isLiteral() {
+            return literal != null;
+        }
+
+        public boolean isDiff() {
+            return DiffParseFunction.diffFunctionName.equals(functionName);
+        }
+
+        public Expression getExpression() {
+            if (parseException != null) {
+                throw parseException;
+            }
+            return expression;
+        }
+
+        public Expression[] getDiffExpressions() {
+            if (parseException != null) {
+                throw parseException;
+            }
+            return diffExpressions;
+        }
+    }
+}
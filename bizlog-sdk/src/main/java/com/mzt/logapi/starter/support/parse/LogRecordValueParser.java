@@ -1,19 +1,36 @@
 package com.mzt.logapi.starter.support.parse;
 
 import com.google.common.base.Strings;
+import com.mzt.logapi.context.LogRecordContextExecutors;
 import com.mzt.logapi.service.impl.DiffParseFunction;
+import com.mzt.logapi.starter.configuration.LogRecordProperties;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
-import org.springframework.context.expression.AnnotatedElementKey;
+import org.springframework.context.expression.BeanFactoryResolver;
+import org.springframework.expression.BeanResolver;
 import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.StringUtils;
 
-import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 /**
  * DATE 3:32 PM
@@ -21,17 +38,25 @@ import java.util.regex.Pattern;
  *
  * @author mzt.
  */
+@Slf4j
 public class LogRecordValueParser implements BeanFactoryAware {
 
-    private static final Pattern pattern = Pattern.compile("\\{\\s*(\\w*)\\s*\\{(.*?)}}");
     public static final String COMMA = ",";
-    private final LogRecordExpressionEvaluator expressionEvaluator = new LogRecordExpressionEvaluator();
+    private static final String TRUE = "true";
+    private LogRecordExpressionEvaluator expressionEvaluator = new LogRecordExpressionEvaluator();
     protected BeanFactory beanFactory;
+    private BeanResolver beanFactoryResolver;
 
     private LogFunctionParser logFunctionParser;
 
     private DiffParseFunction diffParseFunction;
 
+    /**
+     * 为 null 的时候执行前的函数在业务线程中依次调用
+     */
+    private ThreadPoolExecutor beforeFunctionExecutor;
+    private long beforeFunctionTimeoutMillis;
+
     public static int strCount(String srcText, String findText) {
         int count = 0;
         int index = 0;
@@ -42,89 +67,279 @@ public class LogRecordValueParser implements BeanFactoryAware {
         return count;
     }
 
-    public Map<String, String> processTemplate(Collection<String> templates, Object ret,
-                                               Class<?> targetClass, Method method, Object[] args, String errorMsg,
+    public Map<String, String> processTemplate(Collection<LogRecordTemplate> templates, LogRecordInvocationContext invocationContext,
                                                Map<String, String> beforeFunctionNameAndReturnMap) {
         Map<String, String> expressionValues = new HashMap<>();
-        EvaluationContext evaluationContext = expressionEvaluator.createEvaluationContext(method, args, targetClass, ret, errorMsg, beanFactory);
-
-        for (String expressionTemplate : templates) {
-            if (expressionTemplate.contains("{")) {
-                Matcher matcher = pattern.matcher(expressionTemplate);
-                StringBuffer parsedStr = new StringBuffer();
-                AnnotatedElementKey annotatedElementKey = new AnnotatedElementKey(method, targetClass);
-                while (matcher.find()) {
-
-                    String expression = matcher.group(2);
-                    String functionName = matcher.group(1);
-                    if (DiffParseFunction.diffFunctionName.equals(functionName)) {
-                        expression = getDiffFunctionValue(evaluationContext, annotatedElementKey, expression);
-                    } else {
-                        Object value = expressionEvaluator.parseExpression(expression, annotatedElementKey, evaluationContext);
-                        expression = logFunctionParser.getFunctionReturnValue(beforeFunctionNameAndReturnMap, value, expression, functionName);
-                    }
-                    matcher.appendReplacement(parsedStr, Matcher.quoteReplacement(Strings.nullToEmpty(expression)));
-                }
-                matcher.appendTail(parsedStr);
-                expressionValues.put(expressionTemplate, parsedStr.toString());
+        Map<LogRecordTemplate.Segment, String> batchFunctionValues = processBatchFunctions(templates, invocationContext, beforeFunctionNameAndReturnMap);
+        for (LogRecordTemplate template : templates) {
+            if (template.isConstant()) {
+                expressionValues.put(template.getSource(), template.getSource());
             } else {
-                expressionValues.put(expressionTemplate, expressionTemplate);
+                expressionValues.put(template.getSource(), renderTemplate(template, invocationContext,
+                        beforeFunctionNameAndReturnMap, batchFunctionValues));
             }
-
         }
         return expressionValues;
     }
 
-    private String getDiffFunctionValue(EvaluationContext evaluationContext, AnnotatedElementKey annotatedElementKey, String expression) {
-        String[] params = parseDiffFunction(expression);
-        if (params.length == 1) {
-            Object targetObj = expressionEvaluator.parseExpression(params[0], annotatedElementKey, evaluationContext);
-            expression = diffParseFunction.diff(targetObj);
-        } else if (params.length == 2) {
-            Object sourceObj = expressionEvaluator.parseExpression(params[0], annotatedElementKey, evaluationContext);
-            Object targetObj = expressionEvaluator.parseExpression(params[1], annotatedElementKey, evaluationContext);
-            expression = diffParseFunction.diff(sourceObj, targetObj);
+    /**
+     * 判断 condition 是否满足。只有一个没有函数的表达式的时候直接求值，结果是 Boolean 的时候不再转成字符串；
+     * 其他情况和之前一样，渲染之后以 true 结尾的为满足
+     */
+    public boolean evaluateCondition(LogRecordTemplate condition, LogRecordInvocationContext invocationContext,
+                                     Map<String, String> beforeFunctionNameAndReturnMap) {
+        if (condition.isConstant()) {
+            return StringUtils.endsWithIgnoreCase(condition.getSource(), TRUE);
+        }
+        List<LogRecordTemplate.Segment> segments = condition.getSegments();
+        if (segments.size() == 1 && !segments.get(0).isDiff() && Strings.isNullOrEmpty(segments.get(0).getFunctionName())) {
+            Object value = expressionEvaluator.evaluate(segments.get(0).getExpression(), getEvaluationContext(invocationContext));
+            if (value instanceof Boolean) {
+                return (Boolean) value;
+            }
+            return value != null && StringUtils.endsWithIgnoreCase(value.toString(), TRUE);
         }
-        return expression;
+        String value = processTemplate(Collections.singletonList(condition), invocationContext, beforeFunctionNameAndReturnMap)
+                .get(condition.getSource());
+        return StringUtils.endsWithIgnoreCase(value, TRUE);
+    }
+
+    /**
+     * 模板中支持批量调用的函数，同一个函数的参数收集起来一次调用
+     *
+     * @return 占位符和函数的结果，没有批量函数的时候为空
+     */
+    private Map<LogRecordTemplate.Segment, String> processBatchFunctions(Collection<LogRecordTemplate> templates,
+                                                                         LogRecordInvocationContext invocationContext,
+                                                                         Map<String, String> beforeFunctionNameAndReturnMap) {
+        Map<String, Map<LogRecordTemplate.Segment, Object>> valuesByFunction = null;
+        for (LogRecordTemplate template : templates) {
+            if (template.isConstant()) {
+                continue;
+            }
+            for (LogRecordTemplate.Segment segment : template.getSegments()) {
+                if (segment.isLiteral() || segment.isDiff() || Strings.isNullOrEmpty(segment.getFunctionName())
+                        || !logFunctionParser.batchFunction(segment.getFunctionName())
+                        || beforeFunctionNameAndReturnMap != null && beforeFunctionNameAndReturnMap.containsKey(
+                        logFunctionParser.getFunctionCallInstanceKey(segment.getFunctionName(), segment.getExpressionString()))
+                        || invocationContext.getRenderedValues().containsKey(
+                        logFunctionParser.getFunctionCallInstanceKey(segment.getFunctionName(), segment.getExpressionString()))
+                        || invocationContext.getLateBeforeFunctionValues().containsKey(
+                        logFunctionParser.getFunctionCallInstanceKey(segment.getFunctionName(), segment.getExpressionString()))) {
+                    continue;
+                }
+                if (valuesByFunction == null) {
+                    valuesByFunction = new HashMap<>();
+                }
+                Object value = expressionEvaluator.evaluate(segment.getExpression(), getEvaluationContext(invocationContext));
+                valuesByFunction.computeIfAbsent(segment.getFunctionName(), k -> new IdentityHashMap<>()).put(segment, value);
+            }
+        }
+        if (valuesByFunction == null) {
+            return Collections.emptyMap();
+        }
+        Map<LogRecordTemplate.Segment, String> batchFunctionValues = new IdentityHashMap<>();
+        valuesByFunction.forEach((functionName, segmentValues) -> {
+            Map<Object, String> functionValues = logFunctionParser.batchApply(functionName, segmentValues.values());
+            segmentValues.forEach((segment, value) -> batchFunctionValues.put(segment, functionValues.get(value)));
+        });
+        return batchFunctionValues;
+    }
+
+    /**
+     * 同一次方法调用只创建一个 EvaluationContext，没有需要解析的表达式就不创建
+     */
+    protected EvaluationContext getEvaluationContext(LogRecordInvocationContext invocationContext) {
+        LogRecordEvaluationContext evaluationContext = invocationContext.getEvaluationContext();
+        if (evaluationContext == null) {
+            evaluationContext = expressionEvaluator.createEvaluationContext(invocationContext.getMethod(), invocationContext.getArgs(),
+                    invocationContext.getTargetClass(), invocationContext.getRet(), invocationContext.getErrorMsg(), beanFactoryResolver);
+            invocationContext.setEvaluationContext(evaluationContext);
+        }
+        return evaluationContext;
+    }
+
+    /**
+     * 相同函数名和表达式的占位符在一次方法调用中只解析一次，多个模板、多个注解共用解析结果
+     */
+    private String renderTemplate(LogRecordTemplate template, LogRecordInvocationContext invocationContext,
+                                  Map<String, String> beforeFunctionNameAndReturnMap,
+                                  Map<LogRecordTemplate.Segment, String> batchFunctionValues) {
+        Map<String, String> renderedValues = invocationContext.getRenderedValues();
+        StringBuilder parsedStr = new StringBuilder(template.getEstimatedLength());
+        for (LogRecordTemplate.Segment segment : template.getSegments()) {
+            if (segment.isLiteral()) {
+                parsedStr.append(segment.getLiteral());
+                continue;
+            }
+            String functionCallInstanceKey = logFunctionParser.getFunctionCallInstanceKey(
+                    Strings.nullToEmpty(segment.getFunctionName()), segment.getExpressionString());
+            String value = renderedValues.get(functionCallInstanceKey);
+            if (value == null && !renderedValues.containsKey(functionCallInstanceKey)) {
+                if (segment.isDiff()) {
+                    value = getDiffFunctionValue(getEvaluationContext(invocationContext), segment);
+                } else if (batchFunctionValues.containsKey(segment)) {
+                    value = batchFunctionValues.get(segment);
+                } else if (isLateBeforeFunctionPending(invocationContext, functionCallInstanceKey)) {
+                    value = getLateBeforeFunctionValue(invocationContext, functionCallInstanceKey);
+                } else {
+                    Object expressionValue = expressionEvaluator.evaluate(segment.getExpression(), getEvaluationContext(invocationContext));
+                    value = logFunctionParser.getFunctionReturnValue(beforeFunctionNameAndReturnMap, expressionValue,
+                            segment.getExpressionString(), segment.getFunctionName());
+                }
+                renderedValues.put(functionCallInstanceKey, value);
+            }
+            parsedStr.append(Strings.nullToEmpty(value));
+        }
+        return parsedStr.toString();
+    }
+
+    /**
+     * 执行前超时、还没有失败的函数；失败的函数和没有执行前的结果一样重新调用
+     */
+    private boolean isLateBeforeFunctionPending(LogRecordInvocationContext invocationContext, String functionCallInstanceKey) {
+        CompletableFuture<String> lateValue = invocationContext.getLateBeforeFunctionValues().get(functionCallInstanceKey);
+        return lateValue != null && !lateValue.isCompletedExceptionally();
     }
 
-    private String[] parseDiffFunction(String expression) {
-        if (expression.contains(COMMA) && strCount(expression, COMMA) == 1) {
-            return expression.split(COMMA);
+    /**
+     * 执行前超时的函数已经超过了 timeout，这里不再等待：已经返回的使用它的结果，还没有返回的取消并使用空值，
+     * 不会在业务线程中阻塞，也不会再调用一次
+     */
+    private String getLateBeforeFunctionValue(LogRecordInvocationContext invocationContext, String functionCallInstanceKey) {
+        CompletableFuture<String> lateValue = invocationContext.getLateBeforeFunctionValues().get(functionCallInstanceKey);
+        if (lateValue.isDone() && !lateValue.isCompletedExceptionally()) {
+            return lateValue.join();
         }
-        return new String[]{expression};
+        lateValue.cancel(false);
+        log.warn("log record before function still not returned after execute, use empty value, function={}", functionCallInstanceKey);
+        return "";
     }
 
-    public Map<String, String> processBeforeExecuteFunctionTemplate(Collection<String> templates, Class<?> targetClass, Method method, Object[] args) {
+    private String getDiffFunctionValue(EvaluationContext evaluationContext, LogRecordTemplate.Segment segment) {
+        Expression[] params = segment.getDiffExpressions();
+        if (params.length == 1) {
+            Object targetObj = expressionEvaluator.evaluate(params[0], evaluationContext);
+            return diffParseFunction.diff(targetObj);
+        }
+        Object sourceObj = expressionEvaluator.evaluate(params[0], evaluationContext);
+        Object targetObj = expressionEvaluator.evaluate(params[1], evaluationContext);
+        return diffParseFunction.diff(sourceObj, targetObj);
+    }
+
+    /**
+     * 函数是否在方法执行前调用
+     */
+    protected boolean isBeforeFunction(String functionName) {
+        return logFunctionParser.beforeFunction(functionName);
+    }
+
+    /**
+     * 相同函数名和参数表达式的函数只调用一次；开启并行之后，参数在业务线程里解析，函数调用在线程池里并发执行，
+     * 超时的函数方法执行后等待它的结果，失败的函数方法执行后再调用
+     */
+    public Map<String, String> processBeforeExecuteFunctionTemplate(Collection<LogRecordTemplate> templates, LogRecordInvocationContext invocationContext) {
         Map<String, String> functionNameAndReturnValueMap = new HashMap<>();
-        EvaluationContext evaluationContext = expressionEvaluator.createEvaluationContext(method, args, targetClass, null, null, beanFactory);
-
-        for (String expressionTemplate : templates) {
-            if (expressionTemplate.contains("{")) {
-                Matcher matcher = pattern.matcher(expressionTemplate);
-                while (matcher.find()) {
-                    String expression = matcher.group(2);
-                    if (expression.contains("#_ret") || expression.contains("#_errorMsg")) {
+        Map<String, Supplier<String>> functionCalls = beforeFunctionExecutor == null ? null : new LinkedHashMap<>();
+
+        for (LogRecordTemplate template : templates) {
+            for (LogRecordTemplate.Segment segment : template.getSegments()) {
+                if (segment.isLiteral() || segment.isDiff() || segment.isReferencesResult()) {
+                    continue;
+                }
+                String functionName = segment.getFunctionName();
+                if (logFunctionParser.beforeFunction(functionName)) {
+                    String expression = segment.getExpressionString();
+                    String functionCallInstanceKey = logFunctionParser.getFunctionCallInstanceKey(functionName, expression);
+                    if (functionNameAndReturnValueMap.containsKey(functionCallInstanceKey)
+                            || functionCalls != null && functionCalls.containsKey(functionCallInstanceKey)) {
                         continue;
                     }
-                    AnnotatedElementKey annotatedElementKey = new AnnotatedElementKey(method, targetClass);
-                    String functionName = matcher.group(1);
-                    if (logFunctionParser.beforeFunction(functionName)) {
-                        Object value = expressionEvaluator.parseExpression(expression, annotatedElementKey, evaluationContext);
-                        String functionReturnValue = logFunctionParser.getFunctionReturnValue(null, value, expression, functionName);
-                        String functionCallInstanceKey = logFunctionParser.getFunctionCallInstanceKey(functionName, expression);
-                        functionNameAndReturnValueMap.put(functionCallInstanceKey, functionReturnValue);
+                    Object value = expressionEvaluator.evaluate(segment.getExpression(), getEvaluationContext(invocationContext));
+                    if (functionCalls == null) {
+                        functionNameAndReturnValueMap.put(functionCallInstanceKey,
+                                logFunctionParser.getFunctionReturnValue(null, value, expression, functionName));
+                    } else {
+                        functionCalls.put(functionCallInstanceKey,
+                                () -> logFunctionParser.getFunctionReturnValue(null, value, expression, functionName));
                     }
                 }
             }
         }
+        if (functionCalls != null && !functionCalls.isEmpty()) {
+            invokeConcurrently(functionCalls, functionNameAndReturnValueMap, invocationContext);
+        }
         return functionNameAndReturnValueMap;
     }
 
+    /**
+     * 所有函数都提交到线程池，每个函数从提交开始最多等待 timeout，因为是同时提交的，方法执行前最多等待 timeout。
+     * 超时的函数不取消，放入 invocationContext，方法执行后如果已经返回就使用它的结果，否则取消并使用空值；
+     * 线程池满了提交不了的函数方法执行后再调用
+     */
+    private void invokeConcurrently(Map<String, Supplier<String>> functionCalls, Map<String, String> functionNameAndReturnValueMap,
+                                    LogRecordInvocationContext invocationContext) {
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(beforeFunctionTimeoutMillis);
+        List<String> keys = new ArrayList<>(functionCalls.size());
+        List<CompletableFuture<String>> futures = new ArrayList<>(functionCalls.size());
+        long[] deadlines = new long[functionCalls.size()];
+        for (Map.Entry<String, Supplier<String>> functionCall : functionCalls.entrySet()) {
+            try {
+                futures.add(LogRecordContextExecutors.supplyAsync(functionCall.getValue(), beforeFunctionExecutor));
+            } catch (RejectedExecutionException e) {
+                log.warn("log record before function queue is full, function={} is called after execute", functionCall.getKey());
+                continue;
+            }
+            deadlines[keys.size()] = System.nanoTime() + timeoutNanos;
+            keys.add(functionCall.getKey());
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            String key = keys.get(i);
+            CompletableFuture<String> future = futures.get(i);
+            try {
+                long remaining = Math.max(0L, deadlines[i] - System.nanoTime());
+                functionNameAndReturnValueMap.put(key, future.get(remaining, TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                invocationContext.addLateBeforeFunctionValue(key, future);
+                log.warn("log record before function timeout, function={}, timeout={}ms", key, beforeFunctionTimeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (int j = i; j < futures.size(); j++) {
+                    invocationContext.addLateBeforeFunctionValue(keys.get(j), futures.get(j));
+                }
+                return;
+            } catch (ExecutionException e) {
+                log.error("log record before function exception, function={}", key, e.getCause());
+            }
+        }
+    }
+
+    /**
+     * 开启执行前函数的并行调用，线程池满了之后提交不了的函数在方法执行后调用
+     */
+    public void setParallelBeforeFunction(LogRecordProperties.BeforeFunction config) {
+        if (!config.isParallel()) {
+            return;
+        }
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("log-record-before-function-");
+        threadFactory.setDaemon(true);
+        int threads = Math.max(1, config.getThreads());
+        this.beforeFunctionExecutor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, config.getQueueCapacity())), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        this.beforeFunctionExecutor.allowCoreThreadTimeOut(true);
+        this.beforeFunctionTimeoutMillis = config.getTimeout().toMillis();
+    }
+
+    protected void shutdownBeforeFunctionExecutor() {
+        if (beforeFunctionExecutor != null) {
+            beforeFunctionExecutor.shutdownNow();
+        }
+    }
 
     @Override
     public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
         this.beanFactory = beanFactory;
+        this.beanFactoryResolver = new BeanFactoryResolver(beanFactory);
     }
 
     public void setLogFunctionParser(LogFunctionParser logFunctionParser) {
@@ -134,4 +349,12 @@ public class LogRecordValueParser implements BeanFactoryAware {
     public void setDiffParseFunction(DiffParseFunction diffParseFunction) {
         this.diffParseFunction = diffParseFunction;
     }
+
+    protected LogRecordExpressionEvaluator getExpressionEvaluator() {
+        return expressionEvaluator;
+    }
+
+    public void setExpressionEvaluator(LogRecordExpressionEvaluator expressionEvaluator) {
+        this.expressionEvaluator = expressionEvaluator;
+    }
 }
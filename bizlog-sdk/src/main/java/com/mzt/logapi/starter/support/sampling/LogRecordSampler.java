@@ -0,0 +1,111 @@
+package com.mzt.logapi.starter.support.sampling;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.mzt.logapi.starter.configuration.LogRecordProperties;
+import lombok.Getter;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按注解上的 type、subType 对日志采样和限流，在方法执行前决定，被丢弃的日志不解析任何模板；
+ * 配置了 subType 的规则优先于只配置了 type 的规则，没有匹配规则的日志全部记录
+ */
+public class LogRecordSampler {
+
+    private static final String SEPARATOR = "\u0000";
+
+    private final Map<String, Rule> rules;
+    /**
+     * 失败日志不受采样和限流影响
+     */
+    @Getter
+    private final boolean keepFailures;
+
+    public LogRecordSampler(LogRecordProperties.Sampling sampling) {
+        Map<String, Rule> rules = new HashMap<>();
+        for (LogRecordProperties.SamplingRule rule : sampling.getRules()) {
+            if (StringUtils.isEmpty(rule.getType())) {
+                throw new IllegalArgumentException("[LogRecord] sampling rule type required");
+            }
+            if (rule.getRate() < 0 || rule.getRate() > 1) {
+                throw new IllegalArgumentException("[LogRecord] sampling rate must be between 0 and 1: " + rule.getType());
+            }
+            rules.put(key(rule.getType(), rule.getSubType()), new Rule(rule));
+        }
+        this.rules = Collections.unmodifiableMap(rules);
+        this.keepFailures = sampling.isKeepFailures();
+    }
+
+    /**
+     * @param type    注解上配置的 type
+     * @param subType 注解上配置的 subType
+     * @return 匹配的规则，没有的时候为 null
+     */
+    public Rule ruleOf(String type, String subType) {
+        Rule rule = rules.get(key(type, subType));
+        return rule != null || StringUtils.isEmpty(subType) ? rule : rules.get(key(type, null));
+    }
+
+    public List<Rule> getRules() {
+        return new ArrayList<>(rules.values());
+    }
+
+    private static String key(String type, String subType) {
+        return StringUtils.isEmpty(subType) ? type : type + SEPARATOR + subType;
+    }
+
+    @Getter
+    public static final class Rule {
+        private final String type;
+        private final String subType;
+        private final double rate;
+        private final RateLimiter rateLimiter;
+        private final AtomicLong passedCount = new AtomicLong();
+        /**
+         * 采样没有选中的数量
+         */
+        private final AtomicLong sampledOutCount = new AtomicLong();
+        /**
+         * 超过限流丢弃的数量
+         */
+        private final AtomicLong rateLimitedCount = new AtomicLong();
+        /**
+         * 被丢弃之后因为方法执行失败而保留的数量
+         */
+        private final AtomicLong keptFailureCount = new AtomicLong();
+
+        private Rule(LogRecordProperties.SamplingRule rule) {
+            this.type = rule.getType();
+            this.subType = rule.getSubType();
+            this.rate = rule.getRate();
+            this.rateLimiter = rule.getPermitsPerSecond() > 0 ? RateLimiter.create(rule.getPermitsPerSecond()) : null;
+        }
+
+        /**
+         * @return 这一次调用的日志是否记录
+         */
+        public boolean tryAcquire() {
+            if (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate) {
+                sampledOutCount.incrementAndGet();
+                return false;
+            }
+            if (rateLimiter != null && !rateLimiter.tryAcquire()) {
+                rateLimitedCount.incrementAndGet();
+                return false;
+            }
+            passedCount.incrementAndGet();
+            return true;
+        }
+
+        public void recordKeptFailure() {
+            keptFailureCount.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.mzt.logapi.starter.support.sampling;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 把采样和限流的计数注册到 Micrometer，指标名是 log.record.sampling，tag result 是 passed、sampled_out、rate_limited、kept_failure；
+ * 没有开启采样的时候不注册
+ */
+public class LogRecordSamplingMetricsBinder implements SmartInitializingSingleton {
+
+    private static final String METRIC_NAME = "log.record.sampling";
+
+    private final ObjectProvider<LogRecordSampler> samplerProvider;
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    public LogRecordSamplingMetricsBinder(ObjectProvider<LogRecordSampler> samplerProvider, ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.samplerProvider = samplerProvider;
+        this.meterRegistryProvider = meterRegistryProvider;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        LogRecordSampler sampler = samplerProvider.getIfAvailable();
+        MeterRegistry meterRegistry = meterRegistryProvider.getIfAvailable();
+        if (sampler == null || meterRegistry == null) {
+            return;
+        }
+        for (LogRecordSampler.Rule rule : sampler.getRules()) {
+            Tags tags = Tags.of("type", rule.getType(), "subType", rule.getSubType() == null ? "" : rule.getSubType());
+            register(meterRegistry, rule, tags, "passed", LogRecordSampler.Rule::getPassedCount);
+            register(meterRegistry, rule, tags, "sampled_out", LogRecordSampler.Rule::getSampledOutCount);
+            register(meterRegistry, rule, tags, "rate_limited", LogRecordSampler.Rule::getRateLimitedCount);
+            register(meterRegistry, rule, tags, "kept_failure", LogRecordSampler.Rule::getKeptFailureCount);
+        }
+    }
+
+    private void register(MeterRegistry meterRegistry, LogRecordSampler.Rule rule, Tags tags, String result,
+                          Function<LogRecordSampler.Rule, AtomicLong> counter) {
+        FunctionCounter.builder(METRIC_NAME, rule, r -> counter.apply(r).get())
+                .tags(tags)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -4,6 +4,8 @@ import com.mzt.logapi.starter.annotation.LogRecord;
 import com.mzt.logserver.infrastructure.constants.LogRecordType;
 import com.mzt.logserver.pojo.Order;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @author muzhantong
  * create on 2020/6/12 11:07 上午
@@ -23,6 +25,8 @@ public interface IOrderService {
 
     boolean updateBefore(Long orderId, Order order);
 
+    boolean updateBefore_fail(Long orderId, Order order);
+
     boolean updateAfter(Long orderId, Order order);
 
     boolean identity(Long orderId, Order order);
@@ -42,4 +46,8 @@ public interface IOrderService {
     boolean testSubTypeSpEl(Long orderId, Order order);
 
     boolean testVariableInfo(Long orderId, Order order);
+
+    CompletableFuture<Boolean> createOrderAsync(Order order);
+
+    CompletableFuture<Boolean> createOrderCompletedBy(Order order, CompletableFuture<Boolean> result);
 }
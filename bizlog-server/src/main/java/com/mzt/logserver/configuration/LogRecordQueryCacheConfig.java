@@ -0,0 +1,24 @@
+package com.mzt.logserver.configuration;
+
+import com.mzt.logserver.infrastructure.logrecord.service.CachingLogRecordService;
+import com.mzt.logserver.infrastructure.logrecord.service.DbLogRecordService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(prefix = "mzt.log.record.query-cache", name = "enabled", havingValue = "true")
+public class LogRecordQueryCacheConfig {
+
+    @Bean
+    @Primary
+    public CachingLogRecordService cachingLogRecordService(DbLogRecordService dbLogRecordService,
+                                                           @Value("${mzt.log.record.query-cache.maximum-size:10000}") long maximumSize,
+                                                           @Value("${mzt.log.record.query-cache.expire-after-write:60s}") Duration expireAfterWrite) {
+        return new CachingLogRecordService(dbLogRecordService, maximumSize, expireAfterWrite);
+    }
+}
@@ -0,0 +1,18 @@
+package com.mzt.logserver.configuration;
+
+import com.mzt.logserver.infrastructure.logrecord.retention.LogRecordRetentionProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+@Configuration
+@EnableConfigurationProperties(LogRecordRetentionProperties.class)
+public class LogRecordRetentionConfig {
+
+    @Configuration
+    @EnableScheduling
+    @ConditionalOnProperty(prefix = "mzt.log.record.retention", name = "enabled", havingValue = "true")
+    static class RetentionSchedulingConfig {
+    }
+}
@@ -12,6 +12,7 @@ import org.assertj.core.util.Lists;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author muzhantong
@@ -81,6 +82,15 @@ public class OrderServiceImpl implements IOrderService {
         return false;
     }
 
+    @Override
+    @LogRecord(success = "更新了订单{ORDER_BEFORE{#order.orderId}},更新内容为...",
+            fail = "更新订单{ORDER_BEFORE{#order.orderId}}失败，失败原因：「{{#_errorMsg}}」",
+            type = LogRecordType.ORDER, subType = "SAMPLED", bizNo = "{{#order.orderNo}}")
+    public boolean updateBefore_fail(Long orderId, Order order) {
+        order.setOrderId(10000L);
+        throw new RuntimeException("测试fail");
+    }
+
     @Override
     @LogRecord(success = "更新了订单{ORDER{#order.orderId}},更新内容为...",
             type = LogRecordType.ORDER, bizNo = "{{#order.orderNo}}",
@@ -174,4 +184,30 @@ public class OrderServiceImpl implements IOrderService {
     public boolean testVariableInfo(Long orderId, Order order) {
         return false;
     }
+
+    @Override
+    @LogRecord(
+            fail = "异步创建订单失败，失败原因：「{{#_errorMsg}}」",
+            subType = "MANAGER_VIEW",
+            success = "{{#order.purchaseName}}异步下了一个订单,购买商品「{{#order.productName}}」,测试变量「{{#innerOrder.productName}}」,下单结果:{{#_ret}}",
+            type = LogRecordType.ORDER, bizNo = "{{#order.orderNo}}")
+    public CompletableFuture<Boolean> createOrderAsync(Order order) {
+        Order order1 = new Order();
+        order1.setProductName("内部变量测试");
+        LogRecordContext.putVariable("innerOrder", order1);
+        return CompletableFuture.supplyAsync(() -> {
+            log.info("【异步创建订单】orderNo={}", order.getOrderNo());
+            if (order.getProductName() == null) {
+                throw new IllegalArgumentException("商品不能为空");
+            }
+            return true;
+        });
+    }
+
+    @Override
+    @LogRecord(success = "{{#order.purchaseName}}下了一个订单,日志线程「{{T(java.lang.Thread).currentThread().getName()}}」",
+            type = LogRecordType.ORDER, bizNo = "{{#order.orderNo}}")
+    public CompletableFuture<Boolean> createOrderCompletedBy(Order order, CompletableFuture<Boolean> result) {
+        return result;
+    }
 }
@@ -0,0 +1,29 @@
+package com.mzt.logserver.infrastructure.logrecord.retention;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+
+/**
+ * 定时清理过期日志，多实例部署的时候每个实例都会执行，删除是幂等的
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(prefix = "mzt.log.record.retention", name = "enabled", havingValue = "true")
+public class LogRecordRetentionJob {
+
+    @Resource
+    private LogRecordRetentionService logRecordRetentionService;
+
+    @Scheduled(cron = "${mzt.log.record.retention.cron:0 0 3 * * ?}")
+    public void purgeExpired() {
+        try {
+            logRecordRetentionService.purgeExpired();
+        } catch (Exception e) {
+            log.error("purge expired log records exception", e);
+        }
+    }
+}
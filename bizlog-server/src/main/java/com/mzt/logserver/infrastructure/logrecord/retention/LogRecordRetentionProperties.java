@@ -0,0 +1,74 @@
+package com.mzt.logserver.infrastructure.logrecord.retention;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 操作日志的保留时间配置
+ */
+@Data
+@ConfigurationProperties(prefix = "mzt.log.record.retention")
+public class LogRecordRetentionProperties {
+    /**
+     * 是否开启定时清理过期日志
+     */
+    private boolean enabled = false;
+    /**
+     * 定时清理的 cron 表达式
+     */
+    private String cron = "0 0 3 * * ?";
+    /**
+     * 没有单独配置的日志类型的保留时间，为空的时候不过期
+     */
+    private Duration defaultTtl;
+    /**
+     * 按日志类型配置的保留时间，key 是 type
+     */
+    private Map<String, Duration> ttl = new HashMap<>();
+    /**
+     * 每次删除的最大条数，分批删除避免长时间锁表
+     */
+    private int chunkSize = 1000;
+    /**
+     * 两次删除之间的间隔
+     */
+    private Duration chunkPause = Duration.ofMillis(50);
+    /**
+     * 删除之前是否先复制到归档表
+     */
+    private boolean archive = false;
+    /**
+     * 归档表，表结构和 t_logrecord 相同
+     */
+    private String archiveTable = "t_logrecord_archive";
+    /**
+     * 查询的时候是否只查保留时间内的日志，create_time 的下界可以让分区表只扫描需要的分区
+     */
+    private boolean filterQueries = true;
+
+    /**
+     * @param type 日志类型
+     * @return 日志类型的保留时间，不过期的时候为 null
+     */
+    public Duration ttlOf(String type) {
+        Duration typeTtl = ttl.get(type);
+        return typeTtl != null ? typeTtl : defaultTtl;
+    }
+
+    /**
+     * @param type 日志类型
+     * @return 查询的时候 create_time 的下界，不需要过滤的时候为 null
+     */
+    public Date queryLowerBoundOf(String type) {
+        Duration typeTtl = ttlOf(type);
+        if (!filterQueries || typeTtl == null) {
+            return null;
+        }
+        return new Date(System.currentTimeMillis() - typeTtl.toMillis());
+    }
+}
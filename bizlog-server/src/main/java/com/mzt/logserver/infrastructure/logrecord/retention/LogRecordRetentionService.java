@@ -0,0 +1,78 @@
+package com.mzt.logserver.infrastructure.logrecord.retention;
+
+import com.mzt.logserver.repository.LogRecordRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按日志类型的保留时间分批删除（或者归档后删除）过期的日志，每批按主键删除，不会长时间持有锁
+ */
+@Service
+@Slf4j
+public class LogRecordRetentionService {
+
+    @Resource
+    private LogRecordRepository logRecordRepository;
+    @Resource
+    private LogRecordRetentionProperties retentionProperties;
+
+    /**
+     * @return 删除的日志条数
+     */
+    public int purgeExpired() {
+        int purged = 0;
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Duration> entry : retentionProperties.getTtl().entrySet()) {
+            purged += purge(entry.getKey(), null, new Date(now - entry.getValue().toMillis()));
+        }
+        if (retentionProperties.getDefaultTtl() != null) {
+            purged += purge(null, retentionProperties.getTtl().keySet(),
+                    new Date(now - retentionProperties.getDefaultTtl().toMillis()));
+        }
+        return purged;
+    }
+
+    private int purge(String type, Collection<String> excludeTypes, Date before) {
+        int chunkSize = retentionProperties.getChunkSize();
+        int purged = 0;
+        while (true) {
+            List<Long> ids = logRecordRepository.queryExpiredIds(type, excludeTypes, before, chunkSize);
+            if (ids.isEmpty()) {
+                break;
+            }
+            if (retentionProperties.isArchive()) {
+                logRecordRepository.archive(retentionProperties.getArchiveTable(), ids);
+            }
+            logRecordRepository.removeByIds(ids);
+            purged += ids.size();
+            if (ids.size() < chunkSize || !pause()) {
+                break;
+            }
+        }
+        if (purged > 0) {
+            log.info("purged {} expired log records, type={}, before={}", purged, type == null ? "default" : type, before);
+        }
+        return purged;
+    }
+
+    private boolean pause() {
+        long millis = retentionProperties.getChunkPause().toMillis();
+        if (millis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.mzt.logserver.infrastructure.logrecord.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.mzt.logapi.beans.LogRecord;
+import com.mzt.logapi.beans.LogRecordCursor;
+import com.mzt.logapi.service.ILogRecordService;
+import lombok.EqualsAndHashCode;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 给 queryLog、queryLogByBizNo 加上按条数和过期时间淘汰的本地缓存，保存日志的时候失效相同 type、bizNo 的缓存。
+ * 查询期间有相同 type、bizNo 的日志写入的时候，查询结果不放入缓存，避免把写入前的结果缓存下来。
+ * LogRecord 是可变的，缓存里保存查询结果的副本，每次返回的也是副本，调用方修改返回的日志不会影响缓存
+ */
+public class CachingLogRecordService implements ILogRecordService {
+
+    private static final int WRITE_SEQUENCE_STRIPES = 64;
+
+    private final ILogRecordService delegate;
+    private final Cache<QueryKey, List<LogRecord>> cache;
+    /**
+     * 按 type、bizNo 分段的写入序号，查询前后序号不同说明查询期间有写入
+     */
+    private final AtomicLongArray writeSequences = new AtomicLongArray(WRITE_SEQUENCE_STRIPES);
+
+    public CachingLogRecordService(ILogRecordService delegate, long maximumSize, Duration expireAfterWrite) {
+        this.delegate = delegate;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite.toMillis(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public void record(LogRecord logRecord) {
+        try {
+            delegate.record(logRecord);
+        } finally {
+            invalidate(logRecord);
+        }
+    }
+
+    @Override
+    public void recordBatch(List<LogRecord> logRecords) {
+        try {
+            delegate.recordBatch(logRecords);
+        } finally {
+            logRecords.forEach(this::invalidate);
+        }
+    }
+
+    @Override
+    public List<LogRecord> queryLog(String bizNo, String type) {
+        return query(new QueryKey(type, bizNo, null));
+    }
+
+    @Override
+    public List<LogRecord> queryLogByBizNo(String bizNo, String type, String subType) {
+        return query(new QueryKey(type, bizNo, subType));
+    }
+
+    @Override
+    public List<LogRecord> queryLogByCursor(String bizNo, String type, String subType, LogRecordCursor cursor, int pageSize) {
+        return delegate.queryLogByCursor(bizNo, type, subType, cursor, pageSize);
+    }
+
+    /**
+     * @return 缓存的命中、未命中、淘汰等统计
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    private List<LogRecord> query(QueryKey key) {
+        List<LogRecord> logRecords = cache.getIfPresent(key);
+        if (logRecords != null) {
+            return copyOf(logRecords);
+        }
+        int stripe = stripe(key.type, key.bizNo);
+        long sequence = writeSequences.get(stripe);
+        logRecords = key.subType == null ? delegate.queryLog(key.bizNo, key.type)
+                : delegate.queryLogByBizNo(key.bizNo, key.type, key.subType);
+        if (writeSequences.get(stripe) == sequence) {
+            cache.put(key, Collections.unmodifiableList(copyOf(logRecords)));
+        }
+        return logRecords;
+    }
+
+    private static List<LogRecord> copyOf(List<LogRecord> logRecords) {
+        List<LogRecord> copies = new ArrayList<>(logRecords.size());
+        for (LogRecord logRecord : logRecords) {
+            copies.add(copyOf(logRecord));
+        }
+        return copies;
+    }
+
+    private static LogRecord copyOf(LogRecord logRecord) {
+        return LogRecord.builder()
+                .id(logRecord.getId())
+                .tenant(logRecord.getTenant())
+                .type(logRecord.getType())
+                .subType(logRecord.getSubType())
+                .bizNo(logRecord.getBizNo())
+                .operator(logRecord.getOperator())
+                .action(logRecord.getAction())
+                .fail(logRecord.isFail())
+                .createTime(logRecord.getCreateTime() == null ? null : new Date(logRecord.getCreateTime().getTime()))
+                .extra(logRecord.getExtra())
+                .codeVariable(logRecord.getCodeVariable() == null ? null : new HashMap<>(logRecord.getCodeVariable()))
+                .build();
+    }
+
+    private void invalidate(LogRecord logRecord) {
+        writeSequences.incrementAndGet(stripe(logRecord.getType(), logRecord.getBizNo()));
+        cache.invalidate(new QueryKey(logRecord.getType(), logRecord.getBizNo(), null));
+        cache.invalidate(new QueryKey(logRecord.getType(), logRecord.getBizNo(), logRecord.getSubType()));
+    }
+
+    private static int stripe(String type, String bizNo) {
+        return (Objects.hashCode(type) * 31 + Objects.hashCode(bizNo)) & (WRITE_SEQUENCE_STRIPES - 1);
+    }
+
+    @EqualsAndHashCode
+    private static final class QueryKey {
+        private final String type;
+        private final String bizNo;
+        /**
+         * queryLog 不按子类型过滤，为 null
+         */
+        private final String subType;
+
+        private QueryKey(String type, String bizNo, String subType) {
+            this.type = type;
+            this.bizNo = bizNo;
+            this.subType = subType;
+        }
+    }
+}
@@ -1,13 +1,19 @@
 package com.mzt.logserver.infrastructure.logrecord.service;
 
+import com.google.common.base.Preconditions;
 import com.mzt.logapi.beans.LogRecord;
+import com.mzt.logapi.beans.LogRecordCursor;
 import com.mzt.logapi.service.ILogRecordService;
+import com.mzt.logserver.infrastructure.logrecord.retention.LogRecordRetentionService;
 import com.mzt.logserver.repository.LogRecordRepository;
 import com.mzt.logserver.repository.po.LogRecordPO;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 @Service
@@ -16,12 +22,32 @@ public class DbLogRecordService implements ILogRecordService {
 
     @Resource
     private LogRecordRepository logRecordRepository;
+    @Resource
+    private LogRecordRetentionService logRecordRetentionService;
+
+    /**
+     * 批量保存时每条 insert 语句插入的最大行数
+     */
+    @Value("${mzt.log.record.db.batch-size:500}")
+    private int batchSize = 500;
 
     @Override
     public void record(LogRecord logRecord) {
         logRecordRepository.save(LogRecordPO.from(logRecord));
     }
 
+    @Override
+    public void recordBatch(List<LogRecord> logRecords) {
+        if (logRecords.isEmpty()) {
+            return;
+        }
+        List<LogRecordPO> logRecordPOS = new ArrayList<>(logRecords.size());
+        for (LogRecord logRecord : logRecords) {
+            logRecordPOS.add(LogRecordPO.from(logRecord));
+        }
+        logRecordRepository.insertBatch(logRecordPOS, batchSize);
+    }
+
     @Override
     public List<LogRecord> queryLog(String bizNo, String type) {
         List<LogRecordPO> logRecordPOS = logRecordRepository.queryLog(bizNo, type);
@@ -34,7 +60,19 @@ public class DbLogRecordService implements ILogRecordService {
         return LogRecordPO.from(logRecordPOS);
     }
 
-    public void clean() {
+    @Override
+    public List<LogRecord> queryLogByCursor(String bizNo, String type, String subType, LogRecordCursor cursor, int pageSize) {
+        Preconditions.checkArgument(pageSize > 0, "pageSize must be positive");
+        Date createTime = cursor == null ? null : cursor.getCreateTime();
+        Long id = cursor == null || cursor.getId() == null ? null : Long.valueOf(cursor.getId().toString());
+        List<LogRecordPO> logRecordPOS = logRecordRepository.queryLogByCursor(bizNo, type, subType, createTime, id, pageSize);
+        return LogRecordPO.from(logRecordPOS);
+    }
 
+    /**
+     * 删除超过保留时间的日志，没有配置保留时间的时候什么都不做
+     */
+    public void clean() {
+        logRecordRetentionService.purgeExpired();
     }
 }
@@ -3,6 +3,8 @@ package com.mzt.logserver.repository;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.mzt.logserver.repository.po.LogRecordPO;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 public interface LogRecordRepository extends IService<LogRecordPO> {
@@ -20,4 +22,44 @@ public interface LogRecordRepository extends IService<LogRecordPO> {
      */
     List<LogRecordPO> queryLog(String type);
 
+    /**
+     * 按 (create_time, id) 游标查询，走 (type, biz_no[, sub_type], create_time, id) 索引，不需要排序
+     *
+     * @param bizNo      业务标识
+     * @param type       日志类型
+     * @param subType    日志子类型，为 null 的时候不过滤
+     * @param createTime 游标的创建时间，查询第一页的时候为 null
+     * @param id         游标的 id，可以为 null
+     * @param limit      最多返回的条数
+     * @return 日志列表，按 create_time、id 倒序
+     */
+    List<LogRecordPO> queryLogByCursor(String bizNo, String type, String subType, Date createTime, Long id, int limit);
+
+    /**
+     * 多行 insert 批量保存日志，每 batchSize 条一条 insert 语句
+     *
+     * @param logRecords 日志
+     * @param batchSize  每条 insert 语句插入的最大行数
+     */
+    void insertBatch(List<LogRecordPO> logRecords, int batchSize);
+
+    /**
+     * 按 id 升序查询过期日志的 id
+     *
+     * @param type         日志类型，为 null 的时候不按类型过滤
+     * @param excludeTypes 排除的日志类型，可以为空
+     * @param before       create_time 早于这个时间的日志过期
+     * @param limit        最多返回的条数
+     * @return 过期日志的 id
+     */
+    List<Long> queryExpiredIds(String type, Collection<String> excludeTypes, Date before, int limit);
+
+    /**
+     * 把日志复制到归档表，已经归档过的日志不会重复复制
+     *
+     * @param archiveTable 归档表
+     * @param ids          日志 id
+     */
+    void archive(String archiveTable, List<Long> ids);
+
 }
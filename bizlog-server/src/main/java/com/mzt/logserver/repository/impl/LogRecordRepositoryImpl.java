@@ -1,25 +1,43 @@
 package com.mzt.logserver.repository.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.google.common.collect.Lists;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.mzt.logserver.infrastructure.logrecord.retention.LogRecordRetentionProperties;
 import com.mzt.logserver.repository.LogRecordRepository;
 import com.mzt.logserver.repository.mapper.LogRecordMapper;
 import com.mzt.logserver.repository.po.LogRecordPO;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Resource;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @Component
 public class LogRecordRepositoryImpl extends ServiceImpl<LogRecordMapper, LogRecordPO> implements LogRecordRepository {
 
+    /**
+     * ILogRecordService#queryLog 约定最多返回100条
+     */
+    private static final int MAX_QUERY_SIZE = 100;
+
+    @Resource
+    private LogRecordRetentionProperties retentionProperties;
+
     @Override
     public List<LogRecordPO> queryLog(String bizNo, String type) {
         LogRecordMapper baseMapper = super.getBaseMapper();
         QueryWrapper<LogRecordPO> queryWrapper = new QueryWrapper<>();
+        Date lowerBound = retentionProperties.queryLowerBoundOf(type);
         queryWrapper.lambda()
                 .eq(LogRecordPO::getType, type)
                 .eq(LogRecordPO::getBizNo, bizNo)
-                .orderByDesc(LogRecordPO::getCreateTime);
+                .ge(lowerBound != null, LogRecordPO::getCreateTime, lowerBound)
+                .orderByDesc(LogRecordPO::getCreateTime)
+                .orderByDesc(LogRecordPO::getId)
+                .last("limit " + MAX_QUERY_SIZE);
         return baseMapper.selectList(queryWrapper);
     }
 
@@ -27,19 +45,70 @@ public class LogRecordRepositoryImpl extends ServiceImpl<LogRecordMapper, LogRec
     public List<LogRecordPO> queryLog(String bizNo, String type, String subType) {
         LogRecordMapper baseMapper = super.getBaseMapper();
         QueryWrapper<LogRecordPO> queryWrapper = new QueryWrapper<>();
+        Date lowerBound = retentionProperties.queryLowerBoundOf(type);
         queryWrapper.lambda()
                 .eq(LogRecordPO::getType, type)
                 .eq(LogRecordPO::getSubType, subType)
                 .eq(LogRecordPO::getBizNo, bizNo)
-                .orderByDesc(LogRecordPO::getCreateTime);
+                .ge(lowerBound != null, LogRecordPO::getCreateTime, lowerBound)
+                .orderByDesc(LogRecordPO::getCreateTime)
+                .orderByDesc(LogRecordPO::getId)
+                .last("limit " + MAX_QUERY_SIZE);
         return baseMapper.selectList(queryWrapper);
     }
 
     @Override
     public List<LogRecordPO> queryLog(String type) {
         QueryWrapper<LogRecordPO> wrapper = new QueryWrapper<>();
-        wrapper.lambda().eq(LogRecordPO::getType, type);
+        Date lowerBound = retentionProperties.queryLowerBoundOf(type);
+        wrapper.lambda()
+                .eq(LogRecordPO::getType, type)
+                .ge(lowerBound != null, LogRecordPO::getCreateTime, lowerBound);
         return baseMapper.selectList(wrapper);
     }
 
+    @Override
+    public List<LogRecordPO> queryLogByCursor(String bizNo, String type, String subType, Date createTime, Long id, int limit) {
+        QueryWrapper<LogRecordPO> queryWrapper = new QueryWrapper<>();
+        Date lowerBound = retentionProperties.queryLowerBoundOf(type);
+        queryWrapper.lambda()
+                .eq(LogRecordPO::getType, type)
+                .eq(LogRecordPO::getBizNo, bizNo)
+                .eq(subType != null, LogRecordPO::getSubType, subType)
+                .ge(lowerBound != null, LogRecordPO::getCreateTime, lowerBound)
+                .lt(createTime != null && id == null, LogRecordPO::getCreateTime, createTime)
+                .and(createTime != null && id != null, cursor -> cursor
+                        .lt(LogRecordPO::getCreateTime, createTime)
+                        .or(sameTime -> sameTime.eq(LogRecordPO::getCreateTime, createTime).lt(LogRecordPO::getId, id)))
+                .orderByDesc(LogRecordPO::getCreateTime)
+                .orderByDesc(LogRecordPO::getId)
+                .last("limit " + limit);
+        return baseMapper.selectList(queryWrapper);
+    }
+
+    @Override
+    public void insertBatch(List<LogRecordPO> logRecords, int batchSize) {
+        for (List<LogRecordPO> partition : Lists.partition(logRecords, batchSize)) {
+            baseMapper.insertBatch(partition);
+        }
+    }
+
+    @Override
+    public List<Long> queryExpiredIds(String type, Collection<String> excludeTypes, Date before, int limit) {
+        QueryWrapper<LogRecordPO> queryWrapper = new QueryWrapper<>();
+        queryWrapper.lambda()
+                .select(LogRecordPO::getId)
+                .eq(type != null, LogRecordPO::getType, type)
+                .notIn(excludeTypes != null && !excludeTypes.isEmpty(), LogRecordPO::getType, excludeTypes)
+                .lt(LogRecordPO::getCreateTime, before)
+                .orderByAsc(LogRecordPO::getId)
+                .last("limit " + limit);
+        return baseMapper.selectList(queryWrapper).stream().map(LogRecordPO::getId).collect(Collectors.toList());
+    }
+
+    @Override
+    public void archive(String archiveTable, List<Long> ids) {
+        baseMapper.insertIntoArchive(archiveTable, ids);
+    }
+
 }
@@ -2,8 +2,44 @@ package com.mzt.logserver.repository.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.mzt.logserver.repository.po.LogRecordPO;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 @Mapper
 public interface LogRecordMapper extends BaseMapper<LogRecordPO> {
+
+    /**
+     * 一条 insert 语句插入多行，空值使用和表默认值相同的值
+     *
+     * @param logRecords 日志，条数由调用方控制
+     * @return 插入的行数
+     */
+    @Insert("<script>" +
+            "insert into t_logrecord (tenant, type, sub_type, biz_no, operator, action, fail, create_time, extra, code_variable) values " +
+            "<foreach collection='list' item='item' separator=','>" +
+            "(coalesce(#{item.tenant,jdbcType=VARCHAR}, ''), coalesce(#{item.type,jdbcType=VARCHAR}, ''), " +
+            "coalesce(#{item.subType,jdbcType=VARCHAR}, ''), coalesce(#{item.bizNo,jdbcType=VARCHAR}, ''), " +
+            "coalesce(#{item.operator,jdbcType=VARCHAR}, ''), coalesce(#{item.action,jdbcType=VARCHAR}, ''), #{item.fail}, " +
+            "coalesce(#{item.createTime,jdbcType=TIMESTAMP}, current_timestamp), coalesce(#{item.extra,jdbcType=VARCHAR}, ''), " +
+            "coalesce(#{item.codeVariable,jdbcType=VARCHAR}, ''))" +
+            "</foreach>" +
+            "</script>")
+    int insertBatch(@Param("list") List<LogRecordPO> logRecords);
+
+    /**
+     * 把日志复制到归档表，归档表里已经存在的 id 跳过，删除失败后重试不会主键冲突
+     *
+     * @param archiveTable 归档表，来自配置，不能是用户输入
+     * @param ids          日志 id
+     * @return 复制的行数
+     */
+    @Insert("<script>" +
+            "insert into ${archiveTable} select * from t_logrecord t where t.id in " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            " and not exists (select 1 from ${archiveTable} a where a.id = t.id)" +
+            "</script>")
+    int insertIntoArchive(@Param("archiveTable") String archiveTable, @Param("ids") List<Long> ids);
 }
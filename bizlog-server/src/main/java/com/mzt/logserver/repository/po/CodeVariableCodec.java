@@ -0,0 +1,59 @@
+package com.mzt.logserver.repository.po;
+
+import cn.hutool.core.lang.TypeReference;
+import cn.hutool.json.JSONUtil;
+import com.mzt.logapi.beans.CodeVariableType;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * code_variable 列的编码：codeVariable 只有 ClassName、MethodName 两项，保存为 "ClassName#MethodName"，
+ * 不再按 JSON 序列化；读取的时候兼容之前保存的 JSON
+ */
+final class CodeVariableCodec {
+
+    private static final char SEPARATOR = '#';
+
+    private CodeVariableCodec() {
+    }
+
+    static String encode(Map<CodeVariableType, Object> codeVariable) {
+        if (codeVariable == null || codeVariable.isEmpty()) {
+            return "";
+        }
+        Object className = codeVariable.get(CodeVariableType.ClassName);
+        Object methodName = codeVariable.get(CodeVariableType.MethodName);
+        StringBuilder stringBuilder = new StringBuilder(64);
+        if (className != null) {
+            stringBuilder.append(className);
+        }
+        stringBuilder.append(SEPARATOR);
+        if (methodName != null) {
+            stringBuilder.append(methodName);
+        }
+        return stringBuilder.toString();
+    }
+
+    static Map<CodeVariableType, Object> decode(String value) {
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+        if (value.charAt(0) == '{') {
+            return JSONUtil.toBean(value, new TypeReference<Map<CodeVariableType, Object>>() {
+            }, true);
+        }
+        Map<CodeVariableType, Object> codeVariable = new EnumMap<>(CodeVariableType.class);
+        int separatorIndex = value.indexOf(SEPARATOR);
+        String className = separatorIndex < 0 ? value : value.substring(0, separatorIndex);
+        String methodName = separatorIndex < 0 ? "" : value.substring(separatorIndex + 1);
+        if (!className.isEmpty()) {
+            codeVariable.put(CodeVariableType.ClassName, className);
+        }
+        if (!methodName.isEmpty()) {
+            codeVariable.put(CodeVariableType.MethodName, methodName);
+        }
+        return codeVariable;
+    }
+}
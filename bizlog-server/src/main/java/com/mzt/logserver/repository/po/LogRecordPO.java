@@ -1,22 +1,16 @@
 package com.mzt.logserver.repository.po;
 
-import cn.hutool.core.lang.TypeReference;
-import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.annotation.IdType;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
 import com.google.common.collect.Lists;
-import com.mzt.logapi.beans.CodeVariableType;
 import com.mzt.logapi.beans.LogRecord;
 import lombok.Data;
-import org.apache.commons.lang3.StringUtils;
 import org.hibernate.validator.constraints.Length;
-import org.springframework.beans.BeanUtils;
 
 import javax.validation.constraints.NotBlank;
 import java.util.Date;
 import java.util.List;
-import java.util.Map;
 
 @TableName("t_logrecord")
 @Data
@@ -74,12 +68,26 @@ public class LogRecordPO {
      */
     private String extra;
 
+    /**
+     * 打印日志的代码信息，格式见 CodeVariableCodec
+     */
     private String codeVariable;
 
+    /**
+     * 逐个字段赋值，id 由数据库生成，不从 LogRecord 复制
+     */
     public static LogRecordPO from(LogRecord logRecord) {
         LogRecordPO logRecordPO = new LogRecordPO();
-        BeanUtils.copyProperties(logRecord, logRecordPO);
-        logRecordPO.setCodeVariable(JSONUtil.toJsonStr(logRecord.getCodeVariable()));
+        logRecordPO.setTenant(logRecord.getTenant());
+        logRecordPO.setType(logRecord.getType());
+        logRecordPO.setSubType(logRecord.getSubType());
+        logRecordPO.setBizNo(logRecord.getBizNo());
+        logRecordPO.setOperator(logRecord.getOperator());
+        logRecordPO.setAction(logRecord.getAction());
+        logRecordPO.setFail(logRecord.isFail());
+        logRecordPO.setCreateTime(logRecord.getCreateTime());
+        logRecordPO.setExtra(logRecord.getExtra());
+        logRecordPO.setCodeVariable(CodeVariableCodec.encode(logRecord.getCodeVariable()));
         return logRecordPO;
     }
 
@@ -92,14 +100,18 @@ public class LogRecordPO {
     }
 
     private static LogRecord toLogRecord(LogRecordPO logRecordPO) {
-        LogRecord logRecord = new LogRecord();
-        BeanUtils.copyProperties(logRecordPO, logRecord);
-        if (StringUtils.isNotBlank(logRecordPO.getCodeVariable())) {
-            Map<CodeVariableType, Object> toBean = JSONUtil.toBean(logRecordPO.getCodeVariable(),
-                    new TypeReference<Map<CodeVariableType, Object>>() {
-                    }, true);
-            logRecord.setCodeVariable(toBean);
-        }
-        return logRecord;
+        return LogRecord.builder()
+                .id(logRecordPO.getId())
+                .tenant(logRecordPO.getTenant())
+                .type(logRecordPO.getType())
+                .subType(logRecordPO.getSubType())
+                .bizNo(logRecordPO.getBizNo())
+                .operator(logRecordPO.getOperator())
+                .action(logRecordPO.getAction())
+                .fail(logRecordPO.isFail())
+                .createTime(logRecordPO.getCreateTime())
+                .extra(logRecordPO.getExtra())
+                .codeVariable(CodeVariableCodec.decode(logRecordPO.getCodeVariable()))
+                .build();
     }
 }
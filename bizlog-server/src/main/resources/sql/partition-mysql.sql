@@ -0,0 +1,34 @@
+-- MySQL 下 t_logrecord 按月分区，过期的分区可以直接 drop，不需要逐行删除
+-- bizlog-server 不会自动创建、拆分或者删除分区：LogRecordRetentionJob 只按主键分批逐行删除过期日志，分区需要 DBA 按下面的步骤手工维护
+-- 这个文件是模板，不能直接整体执行：先把 <...> 占位符替换成实际的月份，每一步确认之后再单独执行
+--   <cutoff_month>   保留时间的截止月份，比如保留 90 天、今天是 2026-10-17 的时候截止日期是 2026-07-19，截止月份取 2026-07
+--   <cutoff_date>    截止月份的第一天，比如 2026-07-01，早于这一天的日志都已经过期
+--   <month_N>        截止月份之后的各个月份，名字是 pYYYYMM，边界是下个月的第一天
+
+-- 1. 分区列必须包含在主键里，所以主键改为 (id, create_time)；查询带上 create_time 的下界（配置了保留时间时自动带上）只会扫描需要的分区
+-- alter table t_logrecord
+--     modify `create_time` datetime(3) not null default current_timestamp(3) comment '创建时间',
+--     drop primary key,
+--     add primary key (`id`, `create_time`);
+
+-- 2. 第一个分区只放已经过期的日志（< <cutoff_date>），之后每个月一个分区
+-- alter table t_logrecord
+--     partition by range columns (`create_time`) (
+--         partition p_expired values less than ('<cutoff_date>'),
+--         partition p<month_1> values less than ('<month_2 的第一天>'),
+--         partition p<month_2> values less than ('<month_3 的第一天>'),
+--         partition p_max values less than (maxvalue)
+--         );
+
+-- 3. 每月提前拆出下个月的分区
+-- alter table t_logrecord reorganize partition p_max into (
+--     partition p<next_month> values less than ('<next_month 下个月的第一天>'),
+--     partition p_max values less than (maxvalue)
+--     );
+
+-- 4. 只删除上界不晚于保留时间截止日期的分区，删除之前用下面的查询确认分区的上界和行数；
+--    需要归档的时候先 exchange partition 到归档表，不能删除包含未过期日志的分区
+-- select partition_name, partition_description, table_rows
+-- from information_schema.partitions
+-- where table_schema = database() and table_name = 't_logrecord';
+-- alter table t_logrecord drop partition <expired_partition_name>;
@@ -3,22 +3,79 @@ package com.mzt.logserver;
 import com.google.common.collect.Lists;
 import com.mzt.logapi.beans.CodeVariableType;
 import com.mzt.logapi.beans.LogRecord;
+import com.mzt.logapi.beans.LogRecordCursor;
+import com.mzt.logapi.beans.LogRecordPerformance;
+import com.mzt.logapi.context.LogRecordContext;
+import com.mzt.logapi.context.LogRecordContextExecutors;
+import com.mzt.logapi.service.IBatchParseFunction;
+import com.mzt.logapi.service.ILogRecordPerformanceMonitor;
+import com.mzt.logapi.service.ILogRecordService;
+import com.mzt.logapi.service.IParseFunction;
+import com.mzt.logapi.service.impl.DefaultFunctionServiceImpl;
+import com.mzt.logapi.service.impl.DiffParseFunction;
+import com.mzt.logapi.service.impl.ParseFunctionFactory;
+import com.mzt.logapi.starter.configuration.LogRecordProperties;
+import com.mzt.logapi.starter.diff.DefaultDiffItemsToLogContentService;
+import com.mzt.logapi.starter.diff.DiffLogFieldDiffer;
+import com.mzt.logapi.starter.diff.DiffMode;
+import com.mzt.logapi.starter.diff.IDiffItemsToLogContentService;
+import com.mzt.logapi.starter.support.aop.LogRecordInterceptor;
+import com.mzt.logapi.starter.support.async.AsyncLogRecordDispatcher;
+import com.mzt.logapi.starter.support.async.LogRecordRejectPolicy;
+import com.mzt.logapi.starter.support.parse.LogFunctionParser;
+import com.mzt.logapi.starter.support.parse.LogRecordExpressionEvaluator;
+import com.mzt.logapi.starter.support.parse.LogRecordInvocationContext;
+import com.mzt.logapi.starter.support.parse.LogRecordTemplate;
+import com.mzt.logapi.starter.support.parse.LogRecordValueParser;
+import com.mzt.logapi.starter.support.sampling.LogRecordSampler;
+import de.danielbechler.diff.node.DiffNode;
 import com.mzt.logserver.infrastructure.constants.LogRecordType;
+import com.mzt.logserver.infrastructure.logrecord.retention.LogRecordRetentionProperties;
+import com.mzt.logserver.infrastructure.logrecord.service.CachingLogRecordService;
 import com.mzt.logserver.infrastructure.logrecord.service.DbLogRecordService;
+import com.mzt.logserver.impl.OrderServiceImpl;
 import com.mzt.logserver.pojo.Order;
 import org.junit.Assert;
 import org.junit.Test;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.test.context.jdbc.Sql;
+import org.springframework.util.StopWatch;
 
 import javax.annotation.Resource;
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class IOrderServiceTest extends BaseTest {
     @Resource
     private IOrderService orderService;
     @Resource
     private DbLogRecordService logRecordService;
+    @Resource
+    private LogRecordRetentionProperties retentionProperties;
+    @Resource
+    private IDiffItemsToLogContentService diffItemsToLogContentService;
+    @Resource
+    private LogRecordProperties logRecordProperties;
+    @Resource
+    private LogRecordInterceptor logRecordInterceptor;
 
     @Test
     @Sql(scripts = "/sql/clean.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
@@ -54,6 +111,39 @@ public class IOrderServiceTest extends BaseTest {
         logRecordService.clean();
     }
 
+    @Test
+    public void testLegacyPerformanceMonitor() throws Exception {
+        List<StopWatch> printed = new ArrayList<>();
+        ILogRecordPerformanceMonitor legacyMonitor = new ILogRecordPerformanceMonitor() {
+            @Override
+            public void print(StopWatch stopWatch) {
+                printed.add(stopWatch);
+            }
+        };
+        legacyMonitor.record(LogRecordPerformance.builder()
+                .method(OrderServiceImpl.class.getMethod("createOrder", Order.class))
+                .targetClass(OrderServiceImpl.class)
+                .beforeExecuteNanos(100)
+                .afterExecuteNanos(300)
+                .persistNanos(600)
+                .success(true)
+                .build());
+        Assert.assertEquals(1, printed.size());
+        StopWatch stopWatch = printed.get(0);
+        Assert.assertEquals(ILogRecordPerformanceMonitor.MONITOR_NAME, stopWatch.getId());
+        Assert.assertEquals(1000, stopWatch.getTotalTimeNanos());
+        Assert.assertEquals(3, stopWatch.getTaskCount());
+        Assert.assertEquals(ILogRecordPerformanceMonitor.MONITOR_TASK_PERSIST, stopWatch.getLastTaskName());
+        Assert.assertTrue(stopWatch.prettyPrint().contains("000000300  030%  " + ILogRecordPerformanceMonitor.MONITOR_TASK_AFTER_EXECUTE));
+        StopWatch.TaskInfo[] taskInfos = stopWatch.getTaskInfo();
+        Assert.assertEquals(3, taskInfos.length);
+        Assert.assertEquals(ILogRecordPerformanceMonitor.MONITOR_TASK_BEFORE_EXECUTE, taskInfos[0].getTaskName());
+        Assert.assertEquals(100, taskInfos[0].getTimeNanos());
+        Assert.assertEquals(300, taskInfos[1].getTimeNanos());
+        Assert.assertEquals(ILogRecordPerformanceMonitor.MONITOR_TASK_PERSIST, stopWatch.getLastTaskInfo().getTaskName());
+        Assert.assertEquals(600, stopWatch.getLastTaskInfo().getTimeNanos());
+    }
+
     @Test
     @Sql(scripts = "/sql/clean.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
     public void createOrder_interface() {
@@ -207,6 +297,93 @@ public class IOrderServiceTest extends BaseTest {
         logRecordService.clean();
     }
 
+    @Test
+    public void testDiffLogFieldOnly_sameContent() {
+        Order order = new Order();
+        order.setOrderId(99L);
+        order.setOrderNo("MT0000099");
+        order.setProductName("超值优惠红烧肉套餐");
+        order.setPurchaseName("张三");
+        Order.UserDO userDO = new Order.UserDO();
+        userDO.setUserId(9001L);
+        userDO.setUserName("用户1");
+        order.setCreator(userDO);
+        order.setItems(Lists.newArrayList("123", "bbb"));
+        Order order1 = new Order();
+        order1.setOrderId(88L);
+        order1.setOrderNo("MT0000100");
+        order1.setProductName("麻辣烫套餐");
+        order1.setPurchaseName("赵四");
+        Order.UserDO userDO1 = new Order.UserDO();
+        userDO1.setUserId(9002L);
+        userDO1.setUserName("用户2");
+        order1.setCreator(userDO1);
+        order1.setItems(Lists.newArrayList("123", "aaa"));
+
+        DiffParseFunction fullDiff = new DiffParseFunction();
+        DiffParseFunction fieldOnlyDiff = new DiffParseFunction();
+        fieldOnlyDiff.setDiffLogFieldOnly(true);
+        String content = fullDiff.diff(order, order1);
+        Assert.assertFalse(content.isEmpty());
+        Assert.assertEquals(content, fieldOnlyDiff.diff(order, order1));
+        Assert.assertEquals(fullDiff.diff(new Order(), order1), fieldOnlyDiff.diff(new Order(), order1));
+    }
+
+    @Test
+    public void testDiffMode_fieldSameAsObjectDiff() {
+        Order order = new Order();
+        order.setOrderId(99L);
+        order.setOrderNo("MT0000099");
+        order.setPurchaseName("张三");
+        Order.UserDO userDO = new Order.UserDO();
+        userDO.setUserId(9001L);
+        userDO.setUserName("用户1");
+        order.setCreator(userDO);
+        order.setItems(Lists.newArrayList("123", "bbb"));
+        Order order1 = new Order();
+        order1.setOrderId(88L);
+        order1.setOrderNo("MT0000100");
+        order1.setPurchaseName("赵四");
+        Order.UserDO userDO1 = new Order.UserDO();
+        userDO1.setUserId(9002L);
+        userDO1.setUserName("用户2");
+        order1.setCreator(userDO1);
+        order1.setUpdater(userDO);
+        order1.setItems(Lists.newArrayList("123", "aaa"));
+
+        DefaultDiffItemsToLogContentService logContentService = (DefaultDiffItemsToLogContentService) diffItemsToLogContentService;
+        DiffParseFunction objectDiff = new DiffParseFunction();
+        DiffParseFunction fieldDiff = new DiffParseFunction();
+        fieldDiff.setDiffMode(DiffMode.FIELD);
+        fieldDiff.setDiffLogFieldDiffer(new DiffLogFieldDiffer(logContentService, logRecordProperties));
+        String content = objectDiff.diff(order, order1);
+        Assert.assertFalse(content.isEmpty());
+        Assert.assertEquals(content, fieldDiff.diff(order, order1));
+        Assert.assertEquals(objectDiff.diff(new Order(), order1), fieldDiff.diff(new Order(), order1));
+        Assert.assertEquals(objectDiff.diff(order, new Order()), fieldDiff.diff(order, new Order()));
+
+        //自定义的 IDiffItemsToLogContentService 在 FIELD 模式下同样生效
+        DefaultDiffItemsToLogContentService customService = new DefaultDiffItemsToLogContentService(
+                new DefaultFunctionServiceImpl(new ParseFunctionFactory(Lists.newArrayList())), logRecordProperties) {
+            @Override
+            public String getDiffLogContent(String filedLogName, DiffNode.State state, Object sourceValue, Object targetValue,
+                                            String functionName, String identityKey, boolean valueIsCollection) {
+                return "[" + filedLogName + "]";
+            }
+        };
+        DiffParseFunction customFieldDiff = new DiffParseFunction();
+        customFieldDiff.setDiffMode(DiffMode.FIELD);
+        customFieldDiff.setDiffLogFieldDiffer(new DiffLogFieldDiffer(customService, logRecordProperties));
+        Assert.assertTrue(customFieldDiff.diff(order, order1).startsWith("[创建人的用户ID]；"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDiffMode_fieldWithoutDiffer() {
+        DiffParseFunction fieldDiff = new DiffParseFunction();
+        fieldDiff.setDiffMode(DiffMode.FIELD);
+        fieldDiff.diff(new Order(), new Order());
+    }
+
     @Test
     @Sql(scripts = "/sql/clean.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
     public void testDiff3() {
@@ -417,4 +594,833 @@ public class IOrderServiceTest extends BaseTest {
         Assert.assertEquals(codeVariable.get(CodeVariableType.MethodName), "testVariableInfo");
         logRecordService.clean();
     }
-}
\ No newline at end of file
+
+    @Test
+    @Sql(scripts = "/sql/clean.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void testRecordBatch() {
+        List<LogRecord> logRecords = Lists.newArrayList();
+        for (int i = 0; i < 3; i++) {
+            logRecords.add(LogRecord.builder()
+                    .tenant("com.mzt.test")
+                    .type(LogRecordType.ORDER)
+                    .bizNo("MT0000011")
+                    .operator("111")
+                    .action("批量保存日志" + i)
+                    .createTime(new Date())
+                    .build());
+        }
+        logRecordService.recordBatch(logRecords);
+        List<LogRecord> logRecordList = logRecordService.queryLog("MT0000011", LogRecordType.ORDER);
+        Assert.assertEquals(3, logRecordList.size());
+        Assert.assertEquals("", logRecordList.get(0).getSubType());
+        logRecordService.clean();
+    }
+
+    @Test
+    @Sql(scripts = "/sql/clean.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void testQueryLogByCursor() {
+        List<LogRecord> logRecords = Lists.newArrayList();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            logRecords.add(LogRecord.builder()
+                    .tenant("com.mzt.test")
+                    .type(LogRecordType.ORDER)
+                    .bizNo("MT0000011")
+                    .operator("111")
+                    .action("分页日志" + i)
+                    //最后两条的创建时间相同，按 id 倒序
+                    .createTime(new Date(now + Math.min(i, 3) * 1000L))
+                    .build());
+        }
+        logRecordService.recordBatch(logRecords);
+
+        List<LogRecord> firstPage = logRecordService.queryLogByCursor("MT0000011", LogRecordType.ORDER, null, null, 2);
+        Assert.assertEquals(2, firstPage.size());
+        Assert.assertEquals("分页日志4", firstPage.get(0).getAction());
+        Assert.assertEquals("分页日志3", firstPage.get(1).getAction());
+        List<LogRecord> secondPage = logRecordService.queryLogByCursor("MT0000011", LogRecordType.ORDER, null,
+                LogRecordCursor.of(firstPage.get(1)), 2);
+        Assert.assertEquals(2, secondPage.size());
+        Assert.assertEquals("分页日志2", secondPage.get(0).getAction());
+        Assert.assertEquals("分页日志1", secondPage.get(1).getAction());
+        List<LogRecord> lastPage = logRecordService.queryLogByCursor("MT0000011", LogRecordType.ORDER, null,
+                LogRecordCursor.of(secondPage.get(1)), 2);
+        Assert.assertEquals(1, lastPage.size());
+        Assert.assertEquals("分页日志0", lastPage.get(0).getAction());
+        logRecordService.clean();
+    }
+
+    @Test
+    public void testQueryLogByCursor_defaultWithSameCreateTime() {
+        Date createTime = new Date();
+        List<LogRecord> stored = Lists.newArrayList();
+        for (long id = 1; id <= 7; id++) {
+            stored.add(LogRecord.builder().id(id).bizNo("MT0000011").type(LogRecordType.ORDER)
+                    .action("分页日志" + id).createTime(createTime).build());
+        }
+        Collections.shuffle(stored, new Random(7));
+        ILogRecordService inMemoryService = new ILogRecordService() {
+            @Override
+            public void record(LogRecord logRecord) {
+            }
+
+            @Override
+            public List<LogRecord> queryLog(String bizNo, String type) {
+                return stored;
+            }
+
+            @Override
+            public List<LogRecord> queryLogByBizNo(String bizNo, String type, String subType) {
+                return stored;
+            }
+        };
+        List<Serializable> ids = new ArrayList<>();
+        LogRecordCursor cursor = null;
+        List<LogRecord> page;
+        do {
+            page = inMemoryService.queryLogByCursor("MT0000011", LogRecordType.ORDER, null, cursor, 3);
+            page.forEach(logRecord -> ids.add(logRecord.getId()));
+            cursor = page.isEmpty() ? cursor : LogRecordCursor.of(page.get(page.size() - 1));
+        } while (page.size() == 3);
+        Assert.assertEquals(Lists.newArrayList(7L, 6L, 5L, 4L, 3L, 2L, 1L), ids);
+    }
+
+    @Test
+    @Sql(scripts = "/sql/clean.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void testRetention() {
+        List<LogRecord> logRecords = Lists.newArrayList();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            logRecords.add(LogRecord.builder()
+                    .tenant("com.mzt.test")
+                    .type(LogRecordType.ORDER)
+                    .bizNo("MT0000011")
+                    .operator("111")
+                    .action("保留时间日志" + i)
+                    //前三条是10天前的日志
+                    .createTime(new Date(i < 3 ? now - Duration.ofDays(10).toMillis() : now))
+                    .build());
+        }
+        logRecordService.recordBatch(logRecords);
+        Assert.assertEquals(5, logRecordService.queryLog("MT0000011", LogRecordType.ORDER).size());
+
+        retentionProperties.getTtl().put(LogRecordType.ORDER, Duration.ofDays(7));
+        retentionProperties.setChunkSize(2);
+        try {
+            //没有删除之前查询也只返回保留时间内的日志
+            Assert.assertEquals(2, logRecordService.queryLog("MT0000011", LogRecordType.ORDER).size());
+            logRecordService.clean();
+            retentionProperties.setFilterQueries(false);
+            List<LogRecord> logRecordList = logRecordService.queryLog("MT0000011", LogRecordType.ORDER);
+            Assert.assertEquals(2, logRecordList.size());
+            Assert.assertEquals("保留时间日志4", logRecordList.get(0).getAction());
+        } finally {
+            retentionProperties.getTtl().clear();
+            retentionProperties.setChunkSize(1000);
+            retentionProperties.setFilterQueries(true);
+        }
+    }
+
+    @Test
+    @Sql(scripts = "/sql/clean.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void testQueryCache() {
+        CachingLogRecordService cachingLogRecordService = new CachingLogRecordService(logRecordService, 100, Duration.ofMinutes(1));
+        LogRecord logRecord = LogRecord.builder()
+                .tenant("com.mzt.test")
+                .type(LogRecordType.ORDER)
+                .subType("MANAGER_VIEW")
+                .bizNo("MT0000011")
+                .operator("111")
+                .action("缓存日志")
+                .createTime(new Date())
+                .build();
+        cachingLogRecordService.record(logRecord);
+        Assert.assertEquals(1, cachingLogRecordService.queryLog("MT0000011", LogRecordType.ORDER).size());
+        Assert.assertEquals(1, cachingLogRecordService.queryLog("MT0000011", LogRecordType.ORDER).size());
+        Assert.assertEquals(1, cachingLogRecordService.queryLogByBizNo("MT0000011", LogRecordType.ORDER, "MANAGER_VIEW").size());
+        Assert.assertEquals(1, cachingLogRecordService.stats().hitCount());
+        Assert.assertEquals(2, cachingLogRecordService.size());
+
+        //写入相同 type、bizNo 的日志后缓存失效
+        cachingLogRecordService.record(logRecord);
+        Assert.assertEquals(0, cachingLogRecordService.size());
+        Assert.assertEquals(2, cachingLogRecordService.queryLog("MT0000011", LogRecordType.ORDER).size());
+        Assert.assertEquals(2, cachingLogRecordService.queryLogByBizNo("MT0000011", LogRecordType.ORDER, "MANAGER_VIEW").size());
+
+        //修改返回的日志不影响缓存，也不影响其他调用方
+        List<LogRecord> first = cachingLogRecordService.queryLog("MT0000011", LogRecordType.ORDER);
+        first.get(0).setAction("被修改");
+        first.get(0).getCreateTime().setTime(0);
+        LogRecord cached = cachingLogRecordService.queryLog("MT0000011", LogRecordType.ORDER).get(0);
+        Assert.assertNotSame(first.get(0), cached);
+        Assert.assertEquals("缓存日志", cached.getAction());
+        Assert.assertNotEquals(0, cached.getCreateTime().getTime());
+        logRecordService.clean();
+    }
+
+    @Test
+    public void testContextPropagation() throws Exception {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        //先创建好线程，避免线程创建的时候复制变量
+        executorService.submit(() -> {
+        }).get();
+        LogRecordContext.putEmptySpan();
+        try {
+            LogRecordContext.putVariable("title", "异步变量");
+            Object title = LogRecordContextExecutors.supplyAsync(() -> LogRecordContext.getVariable("title"), executorService).get();
+            Assert.assertEquals("异步变量", title);
+            //任务执行完后线程池的线程里不会残留变量
+            Object leftover = executorService.submit(() -> LogRecordContext.getVariable("title")).get();
+            Assert.assertNull(leftover);
+        } finally {
+            LogRecordContext.clear();
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    @Sql(scripts = "/sql/clean.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void testCreateOrderAsync() throws Exception {
+        Order order = new Order();
+        order.setOrderNo("MT0000011");
+        order.setProductName("超值优惠红烧肉套餐");
+        order.setPurchaseName("张三");
+        Assert.assertTrue(orderService.createOrderAsync(order).get());
+        List<LogRecord> logRecordList = waitLog(order.getOrderNo());
+        Assert.assertEquals(1, logRecordList.size());
+        Assert.assertEquals("张三异步下了一个订单,购买商品「超值优惠红烧肉套餐」,测试变量「内部变量测试」,下单结果:true",
+                logRecordList.get(0).getAction());
+
+        Order failOrder = new Order();
+        failOrder.setOrderNo("MT0000012");
+        try {
+            orderService.createOrderAsync(failOrder).get();
+            Assert.fail();
+        } catch (Exception e) {
+            //异步方法的异常在 future 里
+        }
+        logRecordList = waitLog(failOrder.getOrderNo());
+        Assert.assertEquals(1, logRecordList.size());
+        Assert.assertEquals("异步创建订单失败，失败原因：「商品不能为空」", logRecordList.get(0).getAction());
+        Assert.assertTrue(logRecordList.get(0).isFail());
+        logRecordService.clean();
+    }
+
+    @Test
+    @Sql(scripts = "/sql/clean.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void testCreateOrderAsync_notOnCompletingThread() throws Exception {
+        Order order = new Order();
+        order.setOrderNo("MT0000013");
+        order.setPurchaseName("张三");
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        orderService.createOrderCompletedBy(order, result);
+        Thread completer = new Thread(() -> result.complete(true), "event-loop-1");
+        completer.start();
+        completer.join();
+        List<LogRecord> logRecordList = waitLog(order.getOrderNo());
+        Assert.assertEquals(1, logRecordList.size());
+        String action = logRecordList.get(0).getAction();
+        Assert.assertFalse(action, action.contains("event-loop-1"));
+        Assert.assertTrue(action, action.contains("log-record-deferred-"));
+        logRecordService.clean();
+    }
+
+    /**
+     * 异步方法的日志在 future 完成之后写入
+     */
+    private List<LogRecord> waitLog(String bizNo) throws InterruptedException {
+        List<LogRecord> logRecordList = logRecordService.queryLog(bizNo, LogRecordType.ORDER);
+        for (int i = 0; i < 50 && logRecordList.isEmpty(); i++) {
+            Thread.sleep(100);
+            logRecordList = logRecordService.queryLog(bizNo, LogRecordType.ORDER);
+        }
+        return logRecordList;
+    }
+
+    @Test
+    public void testFunctionCache() {
+        AtomicInteger applyCount = new AtomicInteger();
+        IParseFunction userNameFunction = new IParseFunction() {
+            @Override
+            public boolean cacheable() {
+                return true;
+            }
+
+            @Override
+            public String functionName() {
+                return "USER_NAME";
+            }
+
+            @Override
+            public String apply(Object value) {
+                applyCount.incrementAndGet();
+                return "用户" + value;
+            }
+        };
+        DefaultFunctionServiceImpl functionService = new DefaultFunctionServiceImpl(new ParseFunctionFactory(Lists.newArrayList(userNameFunction)));
+        Assert.assertEquals("用户1", functionService.apply("USER_NAME", 1));
+        Assert.assertEquals("用户1", functionService.apply("USER_NAME", 1));
+        Assert.assertEquals("用户2", functionService.apply("USER_NAME", 2));
+        Assert.assertEquals(2, applyCount.get());
+        Assert.assertEquals(1, functionService.getCacheStats().get("USER_NAME").hitCount());
+    }
+
+    @Test
+    public void testBatchFunctionInListDiff() {
+        AtomicInteger batchCount = new AtomicInteger();
+        IBatchParseFunction skuNameFunction = new IBatchParseFunction() {
+            @Override
+            public Map<Object, String> applyBatch(Collection<Object> values) {
+                batchCount.incrementAndGet();
+                Map<Object, String> names = new HashMap<>();
+                values.forEach(value -> names.put(value, "商品" + value));
+                return names;
+            }
+
+            @Override
+            public String functionName() {
+                return "SKU_NAME";
+            }
+        };
+        DefaultFunctionServiceImpl functionService = new DefaultFunctionServiceImpl(new ParseFunctionFactory(Lists.newArrayList(skuNameFunction)));
+        DefaultDiffItemsToLogContentService logContentService = new DefaultDiffItemsToLogContentService(functionService, new LogRecordProperties());
+        List<Object> source = Lists.newArrayList();
+        List<Object> target = Lists.newArrayList();
+        for (int i = 0; i < 500; i++) {
+            source.add("old" + i);
+            target.add("new" + i);
+        }
+        String content = logContentService.getDiffLogContent("商品", DiffNode.State.CHANGED, source, target, "SKU_NAME", "", true);
+        Assert.assertTrue(content.startsWith("【商品】添加了【商品new0，商品new1，"));
+        Assert.assertEquals(1, batchCount.get());
+    }
+
+    @Test
+    public void testListDiff_duplicates() {
+        DefaultDiffItemsToLogContentService logContentService = new DefaultDiffItemsToLogContentService(
+                new DefaultFunctionServiceImpl(new ParseFunctionFactory(Lists.newArrayList())), new LogRecordProperties());
+        Assert.assertEquals("【标签】删除了【a】", logContentService.getDiffLogContent("标签", DiffNode.State.CHANGED,
+                Lists.newArrayList("a", "a", "b"), Lists.newArrayList("a", "b"), "", "", true));
+        Assert.assertEquals("【标签】添加了【b】", logContentService.getDiffLogContent("标签", DiffNode.State.CHANGED,
+                Lists.newArrayList("a", "b"), Lists.newArrayList("a", "b", "b"), "", "", true));
+        Assert.assertEquals("", logContentService.getDiffLogContent("标签", DiffNode.State.CHANGED,
+                Lists.newArrayList("a", "b", "a"), Lists.newArrayList("a", "a", "b"), "", "", true));
+    }
+
+    @Test
+    public void testListDiff_identityKey() {
+        DefaultDiffItemsToLogContentService logContentService = new DefaultDiffItemsToLogContentService(
+                new DefaultFunctionServiceImpl(new ParseFunctionFactory(Lists.newArrayList())), new LogRecordProperties());
+        List<Object> source = Lists.newArrayList(user(1L, "张三"), user(2L, "李四"));
+        List<Object> target = Lists.newArrayList(user(1L, "张三丰"), user(3L, "王五"));
+        String content = logContentService.getDiffLogContent("用户", DiffNode.State.CHANGED, source, target, "", "userId", true);
+        Assert.assertEquals("【用户】添加了【" + user(3L, "王五") + "】删除了【" + user(2L, "李四") + "】；"
+                + "【用户】修改了【" + user(1L, "张三") + "修改为" + user(1L, "张三丰") + "】", content);
+
+        Map<String, Object> oldSku = new HashMap<>();
+        oldSku.put("skuId", 1);
+        oldSku.put("count", 1);
+        Map<String, Object> newSku = new HashMap<>(oldSku);
+        newSku.put("count", 2);
+        content = logContentService.getDiffLogContent("商品", DiffNode.State.CHANGED,
+                Lists.newArrayList(oldSku), Lists.newArrayList(newSku), "", "skuId", true);
+        Assert.assertEquals("【商品】修改了【" + oldSku + "修改为" + newSku + "】", content);
+
+        try {
+            logContentService.getDiffLogContent("用户", DiffNode.State.CHANGED, source, target, "", "userNo", true);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("userNo"));
+        }
+    }
+
+    @Test
+    public void testFormatList() {
+        LogRecordProperties properties = new LogRecordProperties();
+        Assert.assertEquals("【标签】添加了【a】", properties.formatList("标签", "a", ""));
+        Assert.assertEquals("【标签】删除了【b】", properties.formatList("标签", "", "b"));
+        Assert.assertEquals("【标签】添加了【a】删除了【b】", properties.formatList("标签", "a", "b"));
+        Assert.assertEquals("", properties.formatList("标签", "", ""));
+        Assert.assertEquals("【标签】修改了【c修改为d】", properties.formatList("标签", "", "", "c修改为d"));
+        Assert.assertEquals("【标签】添加了【a】；【标签】修改了【c修改为d】", properties.formatList("标签", "a", "", "c修改为d"));
+    }
+
+    private static Order.UserDO user(Long userId, String userName) {
+        Order.UserDO user = new Order.UserDO();
+        user.setUserId(userId);
+        user.setUserName(userName);
+        return user;
+    }
+
+    @Test
+    public void testLogRecordTemplate_parse() {
+        LogRecordExpressionEvaluator expressionEvaluator = new LogRecordExpressionEvaluator();
+        //不是占位符的大括号按文本处理
+        LogRecordTemplate template = LogRecordTemplate.parse("订单{号}：{ORDER{#order.orderNo}}，{\"a\":1}{{#_ret}}", expressionEvaluator);
+        List<LogRecordTemplate.Segment> segments = template.getSegments();
+        Assert.assertFalse(template.isConstant());
+        Assert.assertEquals(4, segments.size());
+        Assert.assertEquals("订单{号}：", segments.get(0).getLiteral());
+        Assert.assertEquals("ORDER", segments.get(1).getFunctionName());
+        Assert.assertEquals("#order.orderNo", segments.get(1).getExpressionString());
+        Assert.assertFalse(segments.get(1).isReferencesResult());
+        Assert.assertEquals("，{\"a\":1}", segments.get(2).getLiteral());
+        Assert.assertEquals("", segments.get(3).getFunctionName());
+        Assert.assertTrue(segments.get(3).isReferencesResult());
+
+        LogRecordTemplate diff = LogRecordTemplate.parse("{_DIFF{#oldOrder, #order}}", expressionEvaluator);
+        Assert.assertTrue(diff.getSegments().get(0).isDiff());
+        Assert.assertEquals(2, diff.getSegments().get(0).getDiffExpressions().length);
+
+        //没有闭合的占位符按文本处理
+        LogRecordTemplate unclosed = LogRecordTemplate.parse("{{#order.orderNo}", expressionEvaluator);
+        Assert.assertTrue(unclosed.isConstant());
+        Assert.assertEquals("{{#order.orderNo}", unclosed.getSegments().get(0).getLiteral());
+        Assert.assertTrue(LogRecordTemplate.parse("", expressionEvaluator).getSegments().isEmpty());
+
+        //表达式错误不影响解析，使用的时候才抛出
+        LogRecordTemplate malformed = LogRecordTemplate.parse("创建了{ORDER{#order.}}", expressionEvaluator);
+        LogRecordTemplate.Segment malformedSegment = malformed.getSegments().get(1);
+        Assert.assertNotNull(malformedSegment.getParseException());
+        try {
+            malformedSegment.getExpression();
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertSame(malformedSegment.getParseException(), e);
+        }
+    }
+
+    @Test
+    public void testExpressionEvaluator_compiledFallback() {
+        LogRecordExpressionEvaluator evaluator = new LogRecordExpressionEvaluator(SpelCompilerMode.IMMEDIATE);
+        Expression expression = evaluator.createExpression("#value.length()");
+        StandardEvaluationContext context = new StandardEvaluationContext();
+        context.setVariable("value", "abc");
+        //IMMEDIATE 第一次解释执行之后编译
+        Assert.assertEquals(3, evaluator.evaluate(expression, context));
+        Assert.assertEquals(1, evaluator.getCompiledCount());
+        context.setVariable("value", "abcd");
+        Assert.assertEquals(4, evaluator.evaluate(expression, context));
+        //编译的代码按 String 处理，参数换成 StringBuilder 后执行失败，退回解释执行
+        context.setVariable("value", new StringBuilder("ab"));
+        Assert.assertEquals(2, evaluator.evaluate(expression, context));
+        Assert.assertEquals(1, evaluator.getFallbackCount());
+        context.setVariable("value", "xyz");
+        Assert.assertEquals(3, evaluator.evaluate(expression, context));
+        Assert.assertEquals(1, evaluator.getCompiledCount());
+        Assert.assertEquals(1, evaluator.getFallbackCount());
+
+        Expression selection = evaluator.createExpression("#list.?[#this > 1]");
+        context.setVariable("list", Lists.newArrayList(1, 2, 3));
+        Assert.assertEquals(Lists.newArrayList(2, 3), evaluator.evaluate(selection, context));
+        Assert.assertEquals(1, evaluator.getNotCompilableCount());
+    }
+
+    @Test
+    public void testExpressionEvaluator_mixedThreshold() {
+        LogRecordExpressionEvaluator evaluator = new LogRecordExpressionEvaluator(SpelCompilerMode.MIXED);
+        Expression expression = evaluator.createExpression("#value.length()");
+        StandardEvaluationContext context = new StandardEvaluationContext();
+        context.setVariable("value", "abc");
+        for (int i = 0; i < 99; i++) {
+            evaluator.evaluate(expression, context);
+        }
+        Assert.assertEquals(0, evaluator.getCompiledCount());
+        evaluator.evaluate(expression, context);
+        Assert.assertEquals(1, evaluator.getCompiledCount());
+        Assert.assertEquals(0, evaluator.getFallbackCount());
+    }
+
+    @Test
+    public void testRenderedValuesShared() throws Exception {
+        AtomicInteger applyCount = new AtomicInteger();
+        IParseFunction orderNameFunction = new IParseFunction() {
+            @Override
+            public String functionName() {
+                return "ORDER_NAME";
+            }
+
+            @Override
+            public String apply(Object value) {
+                applyCount.incrementAndGet();
+                return "订单" + value;
+            }
+        };
+        LogRecordValueParser parser = new LogRecordValueParser();
+        parser.setLogFunctionParser(new LogFunctionParser(
+                new DefaultFunctionServiceImpl(new ParseFunctionFactory(Lists.newArrayList(orderNameFunction)))));
+        LogRecordExpressionEvaluator expressionEvaluator = new LogRecordExpressionEvaluator();
+        LogRecordTemplate bizNo = LogRecordTemplate.parse("{ORDER_NAME{#order.orderNo}}", expressionEvaluator);
+        LogRecordTemplate action = LogRecordTemplate.parse("创建了{ORDER_NAME{#order.orderNo}}", expressionEvaluator);
+        Order order = new Order();
+        order.setOrderNo("MT0000099");
+        LogRecordInvocationContext invocationContext = new LogRecordInvocationContext(
+                OrderServiceImpl.class.getMethod("createOrder", Order.class), new Object[]{order}, OrderServiceImpl.class);
+        invocationContext.setResult(true, "");
+
+        Map<String, String> values = parser.processTemplate(Lists.newArrayList(bizNo, action), invocationContext, null);
+        Assert.assertEquals("订单MT0000099", values.get(bizNo.getSource()));
+        Assert.assertEquals("创建了订单MT0000099", values.get(action.getSource()));
+        //同一次调用的另一个注解
+        LogRecordTemplate extra = LogRecordTemplate.parse("{ORDER_NAME{#order.orderNo}}!", expressionEvaluator);
+        Assert.assertEquals("订单MT0000099!", parser.processTemplate(Lists.newArrayList(extra), invocationContext, null).get(extra.getSource()));
+        Assert.assertEquals(1, applyCount.get());
+    }
+
+    @Test
+    public void testParallelBeforeFunction() throws Exception {
+        AtomicInteger applyCount = new AtomicInteger();
+        Map<Object, String> threadNames = new ConcurrentHashMap<>();
+        IParseFunction oldNameFunction = new IParseFunction() {
+            @Override
+            public boolean executeBefore() {
+                return true;
+            }
+
+            @Override
+            public String functionName() {
+                return "OLD_NAME";
+            }
+
+            @Override
+            public String apply(Object value) {
+                applyCount.incrementAndGet();
+                threadNames.put(value, Thread.currentThread().getName());
+                sleep(300);
+                return value + "@" + LogRecordContext.getVariable("tenant");
+            }
+        };
+        LogRecordValueParser parser = newBeforeFunctionParser(oldNameFunction, Duration.ofSeconds(2));
+        LogRecordTemplate template = LogRecordTemplate.parse(
+                "{OLD_NAME{#order.orderNo}}-{OLD_NAME{#order.purchaseName}}-{OLD_NAME{#order.orderNo}}", new LogRecordExpressionEvaluator());
+        LogRecordContext.putEmptySpan();
+        try {
+            LogRecordContext.putVariable("tenant", "t1");
+            long start = System.nanoTime();
+            Map<String, String> beforeValues = parser.processBeforeExecuteFunctionTemplate(Lists.newArrayList(template), newOrderInvocationContext());
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            //两个不同的调用并发执行，相同的调用只执行一次
+            Assert.assertTrue("elapsed " + elapsedMillis + "ms", elapsedMillis < 550);
+            Assert.assertEquals(2, applyCount.get());
+            Assert.assertEquals("MT0000099@t1", beforeValues.get("OLD_NAME#order.orderNo"));
+            Assert.assertEquals("张三@t1", beforeValues.get("OLD_NAME#order.purchaseName"));
+            threadNames.values().forEach(name -> Assert.assertTrue(name, name.startsWith("log-record-before-function-")));
+        } finally {
+            LogRecordContext.clear();
+        }
+    }
+
+    @Test
+    public void testParallelBeforeFunction_timeout() throws Exception {
+        AtomicInteger applyCount = new AtomicInteger();
+        IParseFunction slowFunction = new IParseFunction() {
+            @Override
+            public boolean executeBefore() {
+                return true;
+            }
+
+            @Override
+            public String functionName() {
+                return "SLOW_NAME";
+            }
+
+            @Override
+            public String apply(Object value) {
+                applyCount.incrementAndGet();
+                sleep(500);
+                return "旧" + value;
+            }
+        };
+        LogRecordValueParser parser = newBeforeFunctionParser(slowFunction, Duration.ofMillis(100));
+        LogRecordTemplate template = LogRecordTemplate.parse("{SLOW_NAME{#order.orderNo}}", new LogRecordExpressionEvaluator());
+        LogRecordInvocationContext invocationContext = newOrderInvocationContext();
+        long start = System.nanoTime();
+        Map<String, String> beforeValues = parser.processBeforeExecuteFunctionTemplate(Lists.newArrayList(template), invocationContext);
+        //超时只限制方法执行前的等待，超时的函数不在执行前的结果里
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 400);
+        Assert.assertFalse(beforeValues.containsKey("SLOW_NAME#order.orderNo"));
+        //方法执行期间超时的函数返回了，方法执行后使用它的结果，不再调用一次
+        sleep(500);
+        invocationContext.setResult(true, "");
+        Assert.assertEquals("旧MT0000099", parser.processTemplate(Lists.newArrayList(template), invocationContext, beforeValues)
+                .get(template.getSource()));
+        Assert.assertEquals(1, applyCount.get());
+    }
+
+    @Test
+    public void testParallelBeforeFunction_neverReturns() throws Exception {
+        AtomicInteger applyCount = new AtomicInteger();
+        CountDownLatch hang = new CountDownLatch(1);
+        IParseFunction hangingFunction = new IParseFunction() {
+            @Override
+            public boolean executeBefore() {
+                return true;
+            }
+
+            @Override
+            public String functionName() {
+                return "HANG_NAME";
+            }
+
+            @Override
+            public String apply(Object value) {
+                applyCount.incrementAndGet();
+                try {
+                    hang.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "旧" + value;
+            }
+        };
+        LogRecordValueParser parser = newBeforeFunctionParser(hangingFunction, Duration.ofMillis(100));
+        LogRecordTemplate template = LogRecordTemplate.parse("修改了{HANG_NAME{#order.orderNo}}", new LogRecordExpressionEvaluator());
+        LogRecordInvocationContext invocationContext = newOrderInvocationContext();
+        try {
+            Map<String, String> beforeValues = parser.processBeforeExecuteFunctionTemplate(Lists.newArrayList(template), invocationContext);
+            invocationContext.setResult(true, "");
+            //方法执行后不等待没有返回的函数，使用空值，也不再调用一次
+            long start = System.nanoTime();
+            Assert.assertEquals("修改了", parser.processTemplate(Lists.newArrayList(template), invocationContext, beforeValues)
+                    .get(template.getSource()));
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100);
+            Assert.assertEquals(1, applyCount.get());
+        } finally {
+            hang.countDown();
+        }
+    }
+
+    private LogRecordValueParser newBeforeFunctionParser(IParseFunction function, Duration timeout) {
+        LogRecordValueParser parser = new LogRecordValueParser();
+        parser.setLogFunctionParser(new LogFunctionParser(
+                new DefaultFunctionServiceImpl(new ParseFunctionFactory(Lists.newArrayList(function)))));
+        LogRecordProperties.BeforeFunction config = new LogRecordProperties.BeforeFunction();
+        config.setParallel(true);
+        config.setThreads(4);
+        config.setTimeout(timeout);
+        parser.setParallelBeforeFunction(config);
+        return parser;
+    }
+
+    private LogRecordInvocationContext newOrderInvocationContext() throws NoSuchMethodException {
+        Order order = new Order();
+        order.setOrderNo("MT0000099");
+        order.setPurchaseName("张三");
+        return new LogRecordInvocationContext(
+                OrderServiceImpl.class.getMethod("createOrder", Order.class), new Object[]{order}, OrderServiceImpl.class);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void testAsyncDispatcher_callerRuns() throws Exception {
+        BlockingLogRecordService service = new BlockingLogRecordService();
+        AsyncLogRecordDispatcher dispatcher = newFullDispatcher(service, LogRecordRejectPolicy.CALLER_RUNS);
+        dispatcher.dispatch(LogRecord.builder().bizNo("r3").build());
+        //队列满了在业务线程中直接写入
+        Assert.assertEquals(Collections.singletonList("r3"), service.callerBizNos);
+        Assert.assertEquals(2, dispatcher.getPendingCount());
+        service.gate.countDown();
+        dispatcher.destroy();
+        Assert.assertEquals(Lists.newArrayList("r0", "r1", "r2", "r3"), service.sortedBizNos());
+        Assert.assertEquals(0, dispatcher.getDroppedCount());
+    }
+
+    @Test
+    public void testAsyncDispatcher_dropOldest() throws Exception {
+        BlockingLogRecordService service = new BlockingLogRecordService();
+        AsyncLogRecordDispatcher dispatcher = newFullDispatcher(service, LogRecordRejectPolicy.DROP_OLDEST);
+        dispatcher.dispatch(LogRecord.builder().bizNo("r3").build());
+        Assert.assertEquals(1, dispatcher.getDroppedCount());
+        Assert.assertEquals(2, dispatcher.getPendingCount());
+        Assert.assertTrue(service.callerBizNos.isEmpty());
+        service.gate.countDown();
+        dispatcher.destroy();
+        Assert.assertEquals(Lists.newArrayList("r0", "r2", "r3"), service.sortedBizNos());
+    }
+
+    @Test
+    public void testAsyncDispatcher_block() throws Exception {
+        BlockingLogRecordService service = new BlockingLogRecordService();
+        AsyncLogRecordDispatcher dispatcher = newFullDispatcher(service, LogRecordRejectPolicy.BLOCK);
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> dispatcher.dispatch(LogRecord.builder().bizNo("r3").build()));
+        Thread.sleep(200);
+        Assert.assertFalse(blocked.isDone());
+        service.gate.countDown();
+        blocked.get(5, TimeUnit.SECONDS);
+        dispatcher.destroy();
+        Assert.assertEquals(Lists.newArrayList("r0", "r1", "r2", "r3"), service.sortedBizNos());
+        Assert.assertTrue(service.callerBizNos.isEmpty());
+    }
+
+    @Test
+    public void testAsyncDispatcher_batchAndDestroy() throws Exception {
+        BlockingLogRecordService service = new BlockingLogRecordService();
+        LogRecordProperties.Async config = new LogRecordProperties.Async();
+        config.setQueueCapacity(1000);
+        config.setBatchSize(10);
+        AsyncLogRecordDispatcher dispatcher = new AsyncLogRecordDispatcher(service, config);
+        dispatcher.dispatch(LogRecord.builder().bizNo("r0").build());
+        Assert.assertTrue(service.entered.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 25; i++) {
+            dispatcher.dispatch(LogRecord.builder().bizNo("r" + i).build());
+        }
+        service.gate.countDown();
+        //关闭的时候队列里的日志全部写完，不丢失
+        dispatcher.destroy();
+        Assert.assertEquals(26, service.sortedBizNos().size());
+        //积压的日志按 batchSize 攒批写入
+        Assert.assertEquals(Lists.newArrayList(1, 10, 10, 5), service.batchSizes);
+        //关闭之后的日志同步写入
+        dispatcher.dispatch(LogRecord.builder().bizNo("r26").build());
+        Assert.assertEquals(27, service.sortedBizNos().size());
+    }
+
+    @Test
+    public void testAsyncDispatcher_destroyTimeout() throws Exception {
+        BlockingLogRecordService service = new BlockingLogRecordService();
+        LogRecordProperties.Async config = new LogRecordProperties.Async();
+        config.setShutdownTimeout(Duration.ofMillis(100));
+        AsyncLogRecordDispatcher dispatcher = new AsyncLogRecordDispatcher(service, config);
+        dispatcher.dispatch(LogRecord.builder().bizNo("r0").build());
+        Assert.assertTrue(service.entered.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 5; i++) {
+            dispatcher.dispatch(LogRecord.builder().bizNo("r" + i).build());
+        }
+        //后台线程等待超时，队列里剩下的日志在关闭的线程中写完
+        dispatcher.destroy();
+        Assert.assertEquals(Lists.newArrayList("r1", "r2", "r3", "r4", "r5"), service.callerBizNos);
+        for (int i = 0; i < 50 && service.bizNos.size() < 6; i++) {
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(Lists.newArrayList("r0", "r1", "r2", "r3", "r4", "r5"), service.sortedBizNos());
+    }
+
+    /**
+     * 队列容量为 2 的 dispatcher：r0 被后台线程取走之后阻塞在写入里，r1、r2 放满队列
+     */
+    private AsyncLogRecordDispatcher newFullDispatcher(BlockingLogRecordService service, LogRecordRejectPolicy rejectPolicy) throws Exception {
+        LogRecordProperties.Async config = new LogRecordProperties.Async();
+        config.setQueueCapacity(2);
+        config.setBatchSize(10);
+        config.setRejectPolicy(rejectPolicy);
+        AsyncLogRecordDispatcher dispatcher = new AsyncLogRecordDispatcher(service, config);
+        dispatcher.dispatch(LogRecord.builder().bizNo("r0").build());
+        Assert.assertTrue(service.entered.await(5, TimeUnit.SECONDS));
+        dispatcher.dispatch(LogRecord.builder().bizNo("r1").build());
+        dispatcher.dispatch(LogRecord.builder().bizNo("r2").build());
+        Assert.assertEquals(2, dispatcher.getPendingCount());
+        return dispatcher;
+    }
+
+    /**
+     * 后台线程的第一次批量写入阻塞到 gate 打开，业务线程中的写入不阻塞
+     */
+    private static class BlockingLogRecordService implements ILogRecordService {
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch gate = new CountDownLatch(1);
+        private final List<String> bizNos = Collections.synchronizedList(new ArrayList<>());
+        private final List<String> callerBizNos = Collections.synchronizedList(new ArrayList<>());
+        private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void recordBatch(List<LogRecord> logRecords) {
+            if (Thread.currentThread().getName().startsWith("log-record-dispatcher-")) {
+                batchSizes.add(logRecords.size());
+                entered.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                logRecords.forEach(logRecord -> callerBizNos.add(logRecord.getBizNo()));
+            }
+            logRecords.forEach(this::record);
+        }
+
+        @Override
+        public void record(LogRecord logRecord) {
+            bizNos.add(logRecord.getBizNo());
+        }
+
+        @Override
+        public List<LogRecord> queryLog(String bizNo, String type) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<LogRecord> queryLogByBizNo(String bizNo, String type, String subType) {
+            return Collections.emptyList();
+        }
+
+        private List<String> sortedBizNos() {
+            List<String> sorted = new ArrayList<>(bizNos);
+            sorted.sort(Comparator.comparingInt(bizNo -> Integer.parseInt(bizNo.substring(1))));
+            return sorted;
+        }
+    }
+
+    @Test
+    public void testSampling() {
+        LogRecordProperties.SamplingRule typeRule = new LogRecordProperties.SamplingRule();
+        typeRule.setType("STOCK");
+        typeRule.setRate(0);
+        LogRecordProperties.SamplingRule subTypeRule = new LogRecordProperties.SamplingRule();
+        subTypeRule.setType("STOCK");
+        subTypeRule.setSubType("SYNC");
+        subTypeRule.setPermitsPerSecond(1);
+        LogRecordProperties.Sampling sampling = new LogRecordProperties.Sampling();
+        sampling.getRules().add(typeRule);
+        sampling.getRules().add(subTypeRule);
+        LogRecordSampler sampler = new LogRecordSampler(sampling);
+
+        Assert.assertNull(sampler.ruleOf(LogRecordType.ORDER, ""));
+        LogRecordSampler.Rule rule = sampler.ruleOf("STOCK", "MANUAL");
+        Assert.assertFalse(rule.tryAcquire());
+        Assert.assertEquals(1, rule.getSampledOutCount().get());
+        LogRecordSampler.Rule syncRule = sampler.ruleOf("STOCK", "SYNC");
+        Assert.assertTrue(syncRule.tryAcquire());
+        Assert.assertFalse(syncRule.tryAcquire());
+        Assert.assertEquals(1, syncRule.getPassedCount().get());
+        Assert.assertEquals(1, syncRule.getRateLimitedCount().get());
+    }
+
+    @Test
+    @Sql(scripts = "/sql/clean.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void testSampling_keptFailureUsesBeforeValue() {
+        LogRecordProperties.SamplingRule rule = new LogRecordProperties.SamplingRule();
+        rule.setType(LogRecordType.ORDER);
+        rule.setSubType("SAMPLED");
+        rule.setRate(0);
+        LogRecordProperties.Sampling sampling = new LogRecordProperties.Sampling();
+        sampling.getRules().add(rule);
+        LogRecordSampler sampler = new LogRecordSampler(sampling);
+        //updateBefore_fail 只在这里调用，执行计划带着这个采样规则缓存
+        logRecordInterceptor.setLogRecordSampler(sampler);
+        Order order = new Order();
+        order.setOrderId(99L);
+        order.setOrderNo("MT0000011");
+        try {
+            orderService.updateBefore_fail(1L, order);
+            Assert.fail();
+        } catch (RuntimeException expected) {
+            Assert.assertEquals("测试fail", expected.getMessage());
+        } finally {
+            logRecordInterceptor.setLogRecordSampler(null);
+        }
+        List<LogRecord> logRecordList = logRecordService.queryLog(order.getOrderNo(), LogRecordType.ORDER);
+        Assert.assertEquals(1, logRecordList.size());
+        //执行前的函数在方法执行之前调用，拿到的是修改之前的 orderId
+        Assert.assertEquals("更新订单xxxx(99)失败，失败原因：「测试fail」", logRecordList.get(0).getAction());
+        LogRecordSampler.Rule samplingRule = sampler.ruleOf(LogRecordType.ORDER, "SAMPLED");
+        Assert.assertEquals(1, samplingRule.getSampledOutCount().get());
+        Assert.assertEquals(1, samplingRule.getKeptFailureCount().get());
+    }
+}
@@ -0,0 +1,93 @@
+package com.mzt.logserver.benchmark;
+
+import com.google.common.collect.Lists;
+import com.mzt.logapi.service.IFunctionService;
+import com.mzt.logapi.service.impl.DiffParseFunction;
+import com.mzt.logapi.starter.configuration.LogRecordProperties;
+import com.mzt.logapi.starter.diff.DefaultDiffItemsToLogContentService;
+import com.mzt.logapi.starter.diff.DiffLogFieldDiffer;
+import com.mzt.logapi.starter.diff.DiffMode;
+import com.mzt.logserver.pojo.Order;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * _DIFF 的两种比较方式 OBJECT_DIFF 和 FIELD 的耗时对比，运行 main 方法即可
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DiffModeBenchmark {
+
+    private DiffParseFunction objectDiff;
+    private DiffParseFunction fieldDiff;
+    private Order source;
+    private Order target;
+
+    @Setup
+    public void setUp() {
+        LogRecordProperties logRecordProperties = new LogRecordProperties();
+        IFunctionService functionService = new IFunctionService() {
+            @Override
+            public String apply(String functionName, Object value) {
+                return String.valueOf(value);
+            }
+
+            @Override
+            public boolean beforeFunction(String functionName) {
+                return false;
+            }
+        };
+        DefaultDiffItemsToLogContentService logContentService = new DefaultDiffItemsToLogContentService(functionService, logRecordProperties);
+        objectDiff = new DiffParseFunction();
+        objectDiff.setDiffItemsToLogContentService(logContentService);
+        fieldDiff = new DiffParseFunction();
+        fieldDiff.setDiffMode(DiffMode.FIELD);
+        fieldDiff.setDiffLogFieldDiffer(new DiffLogFieldDiffer(logContentService, logRecordProperties));
+
+        source = newOrder(1L, "MT0000011", "张三", Lists.newArrayList("xxxx", "bbbb"));
+        target = newOrder(2L, "MT0000099", "李四", Lists.newArrayList("xxxx", "cccc"));
+    }
+
+    private Order newOrder(Long orderId, String orderNo, String userName, List<String> items) {
+        Order order = new Order();
+        order.setOrderId(orderId);
+        order.setOrderNo(orderNo);
+        order.setProductName("超值优惠红烧肉套餐");
+        order.setPurchaseName("张三");
+        order.setCreateTime(new Date(0));
+        Order.UserDO user = new Order.UserDO();
+        user.setUserId(orderId);
+        user.setUserName(userName);
+        order.setCreator(user);
+        order.setItems(items);
+        return order;
+    }
+
+    @Benchmark
+    public String objectDiff() {
+        return objectDiff.diff(source, target);
+    }
+
+    @Benchmark
+    public String fieldDiff() {
+        return fieldDiff.diff(source, target);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(DiffModeBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
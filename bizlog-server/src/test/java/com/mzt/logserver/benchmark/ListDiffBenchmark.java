@@ -0,0 +1,100 @@
+package com.mzt.logserver.benchmark;
+
+import com.mzt.logapi.service.IFunctionService;
+import com.mzt.logapi.starter.configuration.LogRecordProperties;
+import com.mzt.logapi.starter.diff.DefaultDiffItemsToLogContentService;
+import de.danielbechler.diff.node.DiffNode;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 集合字段 diff 的耗时：基于哈希的差集 和 原来 removeAll 的差集对比，运行 main 方法即可。
+ * removeAll 是 O(n·m)，100000 个元素的时候一次要跑几分钟，所以只测到 1000
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListDiffBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class HashDiffState {
+        @Param({"10", "1000", "100000"})
+        public int size;
+        private List<Object> source;
+        private List<Object> target;
+        private DefaultDiffItemsToLogContentService logContentService;
+
+        @Setup
+        public void setUp() {
+            source = newItems(size, 0);
+            target = newItems(size, size / 10 + 1);
+            logContentService = new DefaultDiffItemsToLogContentService(new IFunctionService() {
+                @Override
+                public String apply(String functionName, Object value) {
+                    return String.valueOf(value);
+                }
+
+                @Override
+                public boolean beforeFunction(String functionName) {
+                    return false;
+                }
+            }, new LogRecordProperties());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class RemoveAllState {
+        @Param({"10", "1000"})
+        public int size;
+        private List<Object> source;
+        private List<Object> target;
+
+        @Setup
+        public void setUp() {
+            source = newItems(size, 0);
+            target = newItems(size, size / 10 + 1);
+        }
+    }
+
+    /**
+     * 修改后的列表最后 changed 个元素替换成新的元素
+     */
+    private static List<Object> newItems(int size, int changed) {
+        List<Object> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(i < size - changed ? "item-" + i : "new-item-" + i);
+        }
+        return items;
+    }
+
+    @Benchmark
+    public String hashDiff(HashDiffState state) {
+        return state.logContentService.getDiffLogContent("列表项", DiffNode.State.CHANGED, state.source, state.target, "", "", true);
+    }
+
+    @Benchmark
+    public int removeAllDiff(RemoveAllState state) {
+        Collection<Object> addItemList = new ArrayList<>(state.target);
+        addItemList.removeAll(state.source);
+        Collection<Object> delItemList = new ArrayList<>(state.source);
+        delItemList.removeAll(state.target);
+        return addItemList.size() + delItemList.size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ListDiffBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,83 @@
+package com.mzt.logserver.benchmark;
+
+import com.mzt.logapi.beans.CodeVariableType;
+import com.mzt.logapi.beans.LogRecord;
+import com.mzt.logserver.Main;
+import com.mzt.logserver.infrastructure.logrecord.service.DbLogRecordService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 逐条 record 和 recordBatch 多行 insert 保存日志的吞吐对比，使用 sql/create.sql 的 H2 内存库，运行 main 方法即可
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogRecordBatchInsertBenchmark {
+
+    @Param({"100", "1000"})
+    public int records;
+
+    private ConfigurableApplicationContext applicationContext;
+    private DbLogRecordService logRecordService;
+    private List<LogRecord> logRecords;
+
+    @Setup
+    public void setUp() {
+        applicationContext = new SpringApplicationBuilder(Main.class).web(WebApplicationType.NONE).run();
+        logRecordService = applicationContext.getBean(DbLogRecordService.class);
+        Map<CodeVariableType, Object> codeVariable = new HashMap<>();
+        codeVariable.put(CodeVariableType.ClassName, Main.class);
+        codeVariable.put(CodeVariableType.MethodName, "main");
+        logRecords = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) {
+            logRecords.add(LogRecord.builder()
+                    .tenant("com.mzt.test")
+                    .type("ORDER")
+                    .subType("")
+                    .bizNo("MT" + i)
+                    .operator("111")
+                    .action("修改了订单的配送地址：从“金灿灿小区”, 修改到“银盏盏小区”")
+                    .extra("")
+                    .codeVariable(codeVariable)
+                    .createTime(new Date())
+                    .build());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        applicationContext.close();
+    }
+
+    @Benchmark
+    public void recordOneByOne() {
+        for (LogRecord logRecord : logRecords) {
+            logRecordService.record(logRecord);
+        }
+    }
+
+    @Benchmark
+    public void recordBatch() {
+        logRecordService.recordBatch(logRecords);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(LogRecordBatchInsertBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
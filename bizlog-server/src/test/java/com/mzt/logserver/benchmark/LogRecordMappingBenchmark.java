@@ -0,0 +1,119 @@
+package com.mzt.logserver.benchmark;
+
+import cn.hutool.core.lang.TypeReference;
+import cn.hutool.json.JSONUtil;
+import com.mzt.logapi.beans.CodeVariableType;
+import com.mzt.logapi.beans.LogRecord;
+import com.mzt.logserver.IOrderService;
+import com.mzt.logserver.repository.po.LogRecordPO;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.beans.BeanUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LogRecord 和 LogRecordPO 互相转换的耗时和内存分配：逐字段赋值 + "ClassName#MethodName" 编码 和
+ * 原来的 BeanUtils.copyProperties + hutool JSON 对比，运行 main 方法即可，gc.alloc.rate.norm 是每次操作分配的字节数
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogRecordMappingBenchmark {
+
+    @Param({"100", "1000"})
+    public int size;
+    private List<LogRecord> logRecords;
+    private List<LogRecordPO> logRecordPOS;
+    private List<LogRecordPO> legacyLogRecordPOS;
+
+    @Setup
+    public void setUp() {
+        logRecords = new ArrayList<>(size);
+        logRecordPOS = new ArrayList<>(size);
+        legacyLogRecordPOS = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Map<CodeVariableType, Object> codeVariable = new HashMap<>();
+            codeVariable.put(CodeVariableType.ClassName, IOrderService.class);
+            codeVariable.put(CodeVariableType.MethodName, "createOrder");
+            LogRecord logRecord = LogRecord.builder()
+                    .tenant("com.mzt.test")
+                    .type("ORDER")
+                    .subType("MANAGER_VIEW")
+                    .bizNo("MT" + i)
+                    .operator("111")
+                    .action("张三下了一个订单,购买商品「超值优惠红烧肉套餐」")
+                    .createTime(new Date())
+                    .extra("")
+                    .codeVariable(codeVariable)
+                    .build();
+            logRecords.add(logRecord);
+            logRecordPOS.add(LogRecordPO.from(logRecord));
+            legacyLogRecordPOS.add(legacyFrom(logRecord));
+        }
+    }
+
+    @Benchmark
+    public List<LogRecord> directToLogRecord() {
+        return LogRecordPO.from(logRecordPOS);
+    }
+
+    @Benchmark
+    public List<LogRecord> legacyToLogRecord() {
+        List<LogRecord> ret = new ArrayList<>(legacyLogRecordPOS.size());
+        for (LogRecordPO logRecordPO : legacyLogRecordPOS) {
+            LogRecord logRecord = new LogRecord();
+            BeanUtils.copyProperties(logRecordPO, logRecord);
+            logRecord.setCodeVariable(JSONUtil.toBean(logRecordPO.getCodeVariable(),
+                    new TypeReference<Map<CodeVariableType, Object>>() {
+                    }, true));
+            ret.add(logRecord);
+        }
+        return ret;
+    }
+
+    @Benchmark
+    public List<LogRecordPO> directFromLogRecord() {
+        List<LogRecordPO> ret = new ArrayList<>(logRecords.size());
+        for (LogRecord logRecord : logRecords) {
+            ret.add(LogRecordPO.from(logRecord));
+        }
+        return ret;
+    }
+
+    @Benchmark
+    public List<LogRecordPO> legacyFromLogRecord() {
+        List<LogRecordPO> ret = new ArrayList<>(logRecords.size());
+        for (LogRecord logRecord : logRecords) {
+            ret.add(legacyFrom(logRecord));
+        }
+        return ret;
+    }
+
+    private static LogRecordPO legacyFrom(LogRecord logRecord) {
+        LogRecordPO logRecordPO = new LogRecordPO();
+        BeanUtils.copyProperties(logRecord, logRecordPO);
+        logRecordPO.setCodeVariable(JSONUtil.toJsonStr(logRecord.getCodeVariable()));
+        return logRecordPO;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(LogRecordMappingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,66 @@
+package com.mzt.logserver.benchmark;
+
+import com.mzt.logapi.beans.LogRecordOps;
+import com.mzt.logapi.starter.support.aop.LogRecordOperationSource;
+import com.mzt.logserver.IOrderService;
+import com.mzt.logserver.impl.OrderServiceImpl;
+import com.mzt.logserver.pojo.Order;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每次调用解析 @LogRecord 注解 和 走缓存 的耗时对比，运行 main 方法即可
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogRecordOperationSourceBenchmark {
+
+    private LogRecordOperationSource operationSource;
+    private Method annotatedMethod;
+    private Method plainMethod;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        operationSource = new LogRecordOperationSource();
+        annotatedMethod = IOrderService.class.getMethod("createOrder", Order.class);
+        plainMethod = Order.class.getMethod("getOrderNo");
+    }
+
+    @Benchmark
+    public Collection<LogRecordOps> computeAnnotated() {
+        return operationSource.computeLogRecordOperations(annotatedMethod, OrderServiceImpl.class);
+    }
+
+    @Benchmark
+    public Collection<LogRecordOps> cachedAnnotated() {
+        return operationSource.getLogRecordOperations(annotatedMethod, OrderServiceImpl.class);
+    }
+
+    @Benchmark
+    public Collection<LogRecordOps> computePlain() {
+        return operationSource.computeLogRecordOperations(plainMethod, Order.class);
+    }
+
+    @Benchmark
+    public Collection<LogRecordOps> cachedPlain() {
+        return operationSource.getLogRecordOperations(plainMethod, Order.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(LogRecordOperationSourceBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}